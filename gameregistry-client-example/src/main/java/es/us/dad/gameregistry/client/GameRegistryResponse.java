@@ -1,8 +1,12 @@
 package es.us.dad.gameregistry.client;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import es.us.dad.gameregistry.shared.GameRegistryConstants;
 import es.us.dad.gameregistry.shared.domain.GameSession;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpClientResponse;
@@ -85,6 +89,12 @@ public class GameRegistryResponse {
 	 * this will have a reference to it. In other case it will be null.
 	 */
 	public Throwable innerThrowable;
+	/**
+	 * Milliseconds the server spent in each phase of the request (ie "auth", "db_find", "json"
+	 * and "total"), parsed from the Server-Timing header. Durations of repeated phases are
+	 * added up. Empty if the server didn't send the header.
+	 */
+	public Map<String, Double> serverTiming;
 	
 	/**
 	 * Builds a new GameRegistryResponse and sets it up as an UNKNOWN response type, null sessions 
@@ -95,6 +105,7 @@ public class GameRegistryResponse {
 		sessions = new GameSession[0];
 		innerHttpResponse = null;
 		innerThrowable = null;
+		serverTiming = Collections.emptyMap();
 	}
 	
 	/**
@@ -114,6 +125,7 @@ public class GameRegistryResponse {
 	static GameRegistryResponse fromHttpResponse(HttpClientResponse response, Buffer body) {
 		GameRegistryResponse rval = new GameRegistryResponse();
 		rval.innerHttpResponse = response;
+		rval.serverTiming = parseServerTiming(response.headers().get(GameRegistryConstants.SERVER_TIMING_HEADER));
 		
 		// If '200 OK' or '201 Created' or '202 Accepted'...
 		if (response.statusCode() >= 200 && response.statusCode() < 300) 
@@ -124,6 +136,37 @@ public class GameRegistryResponse {
 		return rval;
 	}
 	
+	/**
+	 * Parses a Server-Timing header like "auth;dur=0.42, db_find;dur=3.10, total;dur=4.05".
+	 * Entries without a valid duration are skipped.
+	 * 
+	 * @param header Value of the header, or null.
+	 * @return Milliseconds by phase, in the order of the header.
+	 */
+	static Map<String, Double> parseServerTiming(String header) {
+		if (header == null || header.isEmpty())
+			return Collections.emptyMap();
+		
+		Map<String, Double> timings = new LinkedHashMap<>();
+		for (String entry : header.split(",")) {
+			String[] parts = entry.split(";");
+			String name = parts[0].trim();
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if (!param.startsWith("dur="))
+					continue;
+				try {
+					double duration = Double.parseDouble(param.substring(4));
+					Double previous = timings.get(name);
+					timings.put(name, previous == null ? duration : previous + duration);
+				} catch (NumberFormatException ignored) {
+					// not a valid duration
+				}
+			}
+		}
+		return timings;
+	}
+	
 	// 200 OK, 201 Created or 202 Accepted...
 	private static void parseOkResponse(HttpClientResponse response, Buffer body, GameRegistryResponse rval) {
 		rval.responseType = ResponseType.OK;
@@ -10,5 +10,9 @@ public class GameRegistryConstants {
      * Name of the header used to specify the system token.
      */
     public static final String GAMEREGISTRY_TOKEN_HEADER = "gameregistry-token";
+    /**
+     * Name of the header with the durations of the phases of a request, if enabled on the server.
+     */
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
 
 }
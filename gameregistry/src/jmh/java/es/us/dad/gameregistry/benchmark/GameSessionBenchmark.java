@@ -0,0 +1,73 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.shared.domain.DomainObject;
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of sessions from and to their JSON maps, which every repository call and every response
+ * goes through. {@code sessions} is 1 for the session routes and 1000 for a large session list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameSessionBenchmark {
+
+    @Param({"1", "1000"})
+    public int sessions;
+
+    private List<Map<String, Object>> jsonMaps;
+    private List<GameSession> gameSessions;
+    // the persistor and JsonObject.toMap() return the dates as Long
+    private Object start;
+    private Date end;
+
+    @Setup
+    public void setUp() {
+        jsonMaps = SampleSessions.createJsonMaps(sessions);
+        gameSessions = SampleSessions.create(sessions);
+        start = jsonMaps.get(0).get("start");
+        end = gameSessions.get(0).getEnd();
+    }
+
+    @Benchmark
+    public void fromJsonMap(Blackhole blackhole) {
+        for (Map<String, Object> json : jsonMaps)
+            blackhole.consume(new GameSession(json));
+    }
+
+    @Benchmark
+    public void toJsonMap(Blackhole blackhole) {
+        for (GameSession session : gameSessions)
+            blackhole.consume(session.toJsonMap());
+    }
+
+    @Benchmark
+    public Date toDate() {
+        return DomainObject.toDate(start);
+    }
+
+    @Benchmark
+    public Long formatDate() {
+        return DomainObject.formatDate(end);
+    }
+}
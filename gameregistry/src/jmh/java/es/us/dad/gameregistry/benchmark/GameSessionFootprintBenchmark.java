@@ -0,0 +1,104 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory held by the sessions a cache or an in-memory store keeps: the compact GameSession against
+ * the representation it replaced ({@link LegacyGameSession}). Every session is read from its own
+ * JSON map, like the replies of the persistor, so sessions don't share their names unless they are
+ * interned.
+ *
+ * {@code retain} reads {@code count} sessions and keeps them; run it with
+ * {@code -prof es.us.dad.gameregistry.benchmark.RetainedHeapProfiler} to get the heap they retain
+ * per session ({@code retained.heap.norm}). {@code fromJsonMap} reads one session; run it with
+ * {@code -prof gc} to compare the allocations per session ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class GameSessionFootprintBenchmark {
+
+    @Param({"legacy", "compact"})
+    public String form;
+
+    @Param({"1000000"})
+    public int count;
+
+    /**
+     * bytes retained per session by the last invocation of {@link #retain}, reported by
+     * {@link RetainedHeapProfiler}
+     */
+    static volatile double retainedPerSession = Double.NaN;
+
+    private List<Map<String, Object>> jsonMaps;
+    private int next;
+
+    private Object read(Map<String, Object> json) {
+        return "legacy".equals(form) ? new LegacyGameSession(json) : new GameSession(json);
+    }
+
+    /**
+     * @return JSON map of a sample session with names of its own, like the ones decoded from a reply
+     */
+    private static Map<String, Object> decodedJsonMap() {
+        Map<String, Object> json = SampleSessions.createJsonMaps(1).get(0);
+        json.put("user", new String(((String) json.get("user")).toCharArray()));
+        json.put("game", new String(((String) json.get("game")).toCharArray()));
+        return json;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jsonMaps = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 1000; i++)
+            jsonMaps.add(decodedJsonMap());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public int retain() {
+        long before = usedHeap();
+        List<Object> retained = new ArrayList<Object>(count);
+        long listSize = usedHeap() - before;
+        for (int i = 0; i < count; i++)
+            retained.add(read(decodedJsonMap()));
+        retainedPerSession = (double) (usedHeap() - before - listSize) / count;
+        return retained.size();
+    }
+
+    @Benchmark
+    public Object fromJsonMap() {
+        next = next + 1 == jsonMaps.size() ? 0 : next + 1;
+        return read(jsonMaps.get(next));
+    }
+}
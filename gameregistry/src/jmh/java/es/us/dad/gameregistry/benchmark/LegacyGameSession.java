@@ -0,0 +1,48 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.shared.domain.DomainObject;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GameSession as it was before it was stored compactly, with a UUID, two dates and the names as
+ * they were read, to compare the footprint of both.
+ */
+public class LegacyGameSession extends DomainObject {
+
+    private UUID id;
+    private String user;
+    private String game;
+    private Date start;
+    private Date end;
+    private Map<String, Object> result;
+
+    @SuppressWarnings("unchecked")
+    public LegacyGameSession(Map<String, Object> jsonMap) {
+        super(jsonMap);
+
+        id = UUID.fromString(jsonMap.get("id").toString());
+        user = jsonMap.get("user").toString();
+        game = jsonMap.get("game").toString();
+        start = toDate(jsonMap.get("start"));
+        end = toDate(jsonMap.get("end"));
+        result = jsonMap.get("result") != null ? (Map<String, Object>) jsonMap.get("result") : null;
+    }
+
+    @Override
+    public Map<String, Object> toJsonMap() {
+        Map<String, Object> json = new HashMap<String, Object>();
+
+        json.put("id", id != null ? id.toString() : null);
+        json.put("user", user);
+        json.put("game", game);
+        json.put("start", formatDate(start));
+        json.put("end", formatDate(end));
+        json.put("result", result);
+
+        return json;
+    }
+}
@@ -0,0 +1,88 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry;
+import es.us.dad.gameregistry.server.service.HmacLoginService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating a request: verifying a signed token in-process against looking it up in a
+ * cache of tokens the login component already validated, which is what a remote validation costs
+ * once it is warm. {@code users} is the number of distinct tokens presented.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginServiceBenchmark {
+
+    private static final byte[] KEY = "secret of the login benchmark...".getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"1", "10000"})
+    public int users;
+
+    private HmacLoginService hmac;
+    // user and token -> expiry in seconds, like the cache of validated tokens
+    private Map<String, Long> validated;
+    private String[] userNames;
+    private String[] tokens;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        hmac = new HmacLoginService(Collections.singletonMap("k1", Base64.getEncoder().encodeToString(KEY)), 30, 3600,
+                                    new MetricsRegistry());
+        validated = new HashMap<String, Long>();
+        userNames = new String[users];
+        tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            userNames[i] = "user" + i;
+            tokens[i] = HmacLoginService.sign("k1", KEY, userNames[i], now + 600);
+            validated.put(userNames[i] + "\n" + tokens[i], now + 600);
+        }
+    }
+
+    private int nextUser() {
+        next = next + 1 == users ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public boolean hmac() {
+        int i = nextUser();
+        return hmac.verify(userNames[i], tokens[i], now);
+    }
+
+    @Benchmark
+    public boolean hmacInvalidSignature() {
+        int i = nextUser();
+        return hmac.verify("someone else", tokens[i], now);
+    }
+
+    @Benchmark
+    public boolean cachedRemote() {
+        int i = nextUser();
+        Long expires = validated.get(userNames[i] + "\n" + tokens[i]);
+        return expires != null && expires >= now;
+    }
+}
@@ -0,0 +1,133 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository;
+import es.us.dad.gameregistry.server.repository.PersistorClient;
+import es.us.dad.gameregistry.server.service.SessionService;
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.groovy.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the mongo repository (building the commands, mapping the replies) and the session
+ * service on top of it. The persistor is replaced by canned replies, which are answered on the
+ * calling thread instead of going through the event bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MongoSessionRepositoryBenchmark {
+
+    /**
+     * answers finds with {@code sessions} documents (one if the matcher has an id) and updates with ok
+     */
+    private static final class CannedPersistor extends PersistorClient {
+        private final JsonObject findOne;
+        private final JsonObject findAll;
+        private final JsonObject updated = new JsonObject().putString("status", "ok").putNumber("number", 1);
+
+        CannedPersistor(int sessions) {
+            super(null, null);
+            findOne = findReply(1);
+            findAll = findReply(sessions);
+        }
+
+        private static JsonObject findReply(int sessions) {
+            JsonArray results = new JsonArray();
+            for (int i = 0; i < sessions; i++) {
+                GameSession session = new GameSession();
+                session.setId(UUID.randomUUID());
+                session.setUser("benchmark");
+                session.setGame("game");
+                session.setStart(new Date());
+                session.setEnd(new Date());
+                session.setResult(Collections.<String, Object>singletonMap("score", i));
+                results.addObject(new JsonObject(MongoSessionRepository.toDocument(session)));
+            }
+            return new JsonObject().putString("status", "ok").putArray("results", results);
+        }
+
+        // overrides the untyped groovy signature
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public void send(String address, Map command, Closure replyHandler) {
+            JsonObject reply;
+            if ("find".equals(command.get("action")))
+                reply = ((Map<?, ?>) command.get("matcher")).containsKey("_id") ? findOne : findAll;
+            else
+                reply = updated;
+            replyHandler.call(new Message(message(reply)));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static org.vertx.java.core.eventbus.Message<JsonObject> message(final JsonObject body) {
+            return (org.vertx.java.core.eventbus.Message<JsonObject>) Proxy.newProxyInstance(
+                    CannedPersistor.class.getClassLoader(),
+                    new Class<?>[]{org.vertx.java.core.eventbus.Message.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return "body".equals(method.getName()) ? body : null;
+                        }
+                    });
+        }
+    }
+
+    @Param({"1", "100"})
+    public int sessions;
+
+    private MongoSessionRepository repository;
+    private SessionService sessionService;
+    private UUID id;
+
+    @Setup
+    public void setUp() {
+        repository = new MongoSessionRepository(new CannedPersistor(sessions), null,
+                                                MongoSessionRepository.DEFAULT_ADDRESS, null, 0);
+        sessionService = new SessionService(null, null, repository);
+        id = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public GameSession getSession() {
+        return Promises.await(sessionService.getSession(id));
+    }
+
+    @Benchmark
+    public List<GameSession> findByUser() {
+        return Promises.await(sessionService.findSessions(null, "benchmark"));
+    }
+
+    /**
+     * find and update, the canned session belongs to the user
+     */
+    @Benchmark
+    public GameSession finishSession() {
+        return Promises.await(sessionService.finishSession("benchmark", id, null));
+    }
+}
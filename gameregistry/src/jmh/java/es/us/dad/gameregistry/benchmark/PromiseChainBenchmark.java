@@ -0,0 +1,160 @@
+package es.us.dad.gameregistry.benchmark;
+
+import com.darylteo.vertx.promises.groovy.Promise;
+import es.us.dad.gameregistry.server.exception.ForbiddenException;
+import es.us.dad.gameregistry.server.repository.ISessionRepository;
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository;
+import es.us.dad.gameregistry.server.service.LoginServiceMock;
+import es.us.dad.gameregistry.server.service.SessionService;
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Overhead of the callbacks of one request on top of an in-memory repository: the promise chains
+ * the request path used to build (authentication, service and controller, reproduced here) against
+ * the vert.x handlers it passes now. Run with {@code -prof gc} to compare the allocations per
+ * request ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromiseChainBenchmark {
+
+    private static final Map<String, Object> RESULT = Collections.<String, Object>singletonMap("score", 42);
+
+    /**
+     * a callback of a promise, the closures of the groovy code capture their variables the same way
+     */
+    private static final class Callback extends Closure<Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final Function<Object, Object> function;
+
+        Callback(Function<Object, Object> function) {
+            super(null);
+            this.function = function;
+        }
+
+        public Object doCall(Object value) {
+            return function.apply(value);
+        }
+
+        @Override
+        public Object call(Object value) {
+            return doCall(value);
+        }
+
+        @Override
+        public Object call(Object... args) {
+            return doCall(args.length > 0 ? args[0] : null);
+        }
+    }
+
+    private ISessionRepository repository;
+    private SessionService sessionService;
+    private LoginServiceMock loginService;
+    private UUID openSession;
+    private Object response;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new InMemorySessionRepository();
+        // vert.x and the logger aren't used without cache and expiry wheel
+        sessionService = new SessionService(null, null, repository);
+        loginService = new LoginServiceMock();
+        openSession = Promises.await(sessionService.startSession("benchmark", "game")).getId();
+    }
+
+    private static Promise<Boolean> authenticated() {
+        Promise<Boolean> p = new Promise<Boolean>();
+        p.fulfill(true);
+        return p;
+    }
+
+    /**
+     * GET /api/v1/sessions/:id as promises: the login promise and the found session, each with then and fail
+     */
+    @Benchmark
+    public Object getSessionPromises() {
+        authenticated().then(new Callback(isAuthenticated -> {
+            repository.findById(openSession).then(new Callback(session -> {
+                response = session;
+                return null;
+            })).fail(new Callback(ex -> {
+                response = ex;
+                return null;
+            }));
+            return null;
+        })).fail(new Callback(ex -> {
+            response = ex;
+            return null;
+        }));
+        return response;
+    }
+
+    @Benchmark
+    public Object getSessionHandlers() {
+        loginService.isAuthenticated("benchmark", "token", isAuthenticated ->
+                sessionService.getSession(openSession, null, found ->
+                        response = found.succeeded() ? found.result() : found.cause()));
+        return response;
+    }
+
+    /**
+     * PUT /api/v1/sessions/:id as promises: find, check and update the session, then notify the caches
+     */
+    @Benchmark
+    public Object finishSessionPromises() {
+        authenticated().then(new Callback(isAuthenticated -> {
+            Promise<Object> updated = repository.findById(openSession).then(new Callback(found -> {
+                GameSession session = (GameSession) found;
+                if (!session.getUser().equals("benchmark"))
+                    throw new ForbiddenException("Only the creator of the GameSession can mark the GameSession as finished.");
+                session.setEnd(new Date());
+                session.setResult(RESULT);
+                return repository.update(session);
+            }));
+            updated.then(new Callback(session -> session)).then(new Callback(session -> {
+                response = session;
+                return null;
+            })).fail(new Callback(ex -> {
+                response = ex;
+                return null;
+            }));
+            return null;
+        })).fail(new Callback(ex -> {
+            response = ex;
+            return null;
+        }));
+        return response;
+    }
+
+    @Benchmark
+    public Object finishSessionHandlers() {
+        loginService.isAuthenticated("benchmark", "token", isAuthenticated ->
+                sessionService.finishSession("benchmark", openSession, RESULT, null, finished ->
+                        response = finished.succeeded() ? finished.result() : finished.cause()));
+        return response;
+    }
+}
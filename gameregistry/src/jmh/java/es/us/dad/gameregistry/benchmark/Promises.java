@@ -0,0 +1,58 @@
+package es.us.dad.gameregistry.benchmark;
+
+import com.darylteo.vertx.promises.groovy.Promise;
+import groovy.lang.Closure;
+
+/**
+ * Waits for the promises of the benchmarked code, which are completed on the calling thread
+ * when they don't go through vert.x.
+ */
+final class Promises {
+
+    private Promises() {
+    }
+
+    private static final class Capture extends Closure<Object> {
+        private static final long serialVersionUID = 1L;
+
+        Object value;
+        boolean called;
+
+        Capture() {
+            super(null);
+        }
+
+        public Object doCall(Object value) {
+            this.value = value;
+            this.called = true;
+            return null;
+        }
+
+        @Override
+        public Object call(Object value) {
+            return doCall(value);
+        }
+
+        @Override
+        public Object call(Object... args) {
+            return doCall(args.length > 0 ? args[0] : null);
+        }
+    }
+
+    /**
+     * @return the value the promise was fulfilled with
+     * @throws IllegalStateException if the promise was rejected or isn't completed yet
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T await(Promise<T> promise) {
+        Capture fulfilled = new Capture();
+        Capture rejected = new Capture();
+        promise.then(fulfilled, rejected);
+
+        if (rejected.called)
+            throw new IllegalStateException("The promise was rejected: " + rejected.value);
+        if (!fulfilled.called)
+            throw new IllegalStateException("The promise wasn't completed on the calling thread.");
+        return (T) fulfilled.value;
+    }
+}
@@ -0,0 +1,39 @@
+package es.us.dad.gameregistry.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.profile.ProfilerResult;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Reports the heap retained per session by {@link GameSessionFootprintBenchmark#retain} as a
+ * secondary result of the benchmark ({@code retained.heap.norm}), so it ends up in the results
+ * of the run next to the {@code -prof gc} numbers instead of on stdout.
+ */
+public class RetainedHeapProfiler implements InternalProfiler {
+
+    @Override
+    public String getDescription() {
+        return "Heap retained per session by GameSessionFootprintBenchmark.retain";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        GameSessionFootprintBenchmark.retainedPerSession = Double.NaN;
+    }
+
+    @Override
+    public Collection<ProfilerResult> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                     IterationResult result) {
+        double retained = GameSessionFootprintBenchmark.retainedPerSession;
+        if (Double.isNaN(retained))
+            return Collections.emptyList();
+        return Collections.singletonList(
+                new ProfilerResult("\u00b7retained.heap.norm", retained, "B/session", AggregationPolicy.AVG));
+    }
+}
@@ -0,0 +1,48 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.shared.domain.GameSession;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sessions shaped like the ones the registry stores: finished a few minutes after they were
+ * started, with a small result.
+ */
+public final class SampleSessions {
+
+    private SampleSessions() {
+    }
+
+    public static List<GameSession> create(int count) {
+        List<GameSession> sessions = new ArrayList<GameSession>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            result.put("score", 1000 + i);
+            result.put("level", i % 10);
+            result.put("won", i % 2 == 0);
+
+            GameSession session = new GameSession();
+            session.setId(UUID.randomUUID());
+            session.setUser("user" + (i % 50));
+            session.setGame("game" + (i % 5));
+            session.setStart(new Date(now - 600000 + i));
+            session.setEnd(new Date(now - 300000 + i));
+            session.setResult(result);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    public static List<Map<String, Object>> createJsonMaps(int count) {
+        List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>(count);
+        for (GameSession session : create(count))
+            maps.add(session.toJsonMap());
+        return maps;
+    }
+}
@@ -0,0 +1,95 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.server.service.ISessionIdGenerator;
+import es.us.dad.gameregistry.server.service.RandomSessionIdGenerator;
+import es.us.dad.gameregistry.server.service.TimeOrderedSessionIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session ids: generating them from several threads at once, like the event loops do, and
+ * inserting them into a large sorted index. The index is a tree of {@code collection} sessions
+ * where the oldest session is removed for every new one, an in-process stand-in for the index of
+ * the sessions collection: random ids land anywhere in it, time-ordered ids always at its end.
+ * To measure the inserts of a real database, run the load test against mongo with
+ * {@code "session_ids": "time_ordered"} in the configuration of the server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionIdBenchmark {
+
+    private static ISessionIdGenerator generator(String name) {
+        return "timeOrdered".equals(name) ? new TimeOrderedSessionIdGenerator() : new RandomSessionIdGenerator();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Generator {
+        @Param({"random", "timeOrdered"})
+        public String generator;
+
+        ISessionIdGenerator ids;
+
+        @Setup
+        public void setUp() {
+            ids = generator(generator);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Index {
+        @Param({"random", "timeOrdered"})
+        public String generator;
+
+        @Param({"1000000"})
+        public int collection;
+
+        ISessionIdGenerator ids;
+        TreeMap<UUID, Boolean> index;
+        ArrayDeque<UUID> inserted;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            ids = generator(generator);
+            index = new TreeMap<UUID, Boolean>();
+            inserted = new ArrayDeque<UUID>(collection);
+            for (int i = 0; i < collection; i++) {
+                UUID id = ids.next();
+                index.put(id, Boolean.TRUE);
+                inserted.add(id);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UUID generate(Generator state) {
+        return state.ids.next();
+    }
+
+    @Benchmark
+    public Boolean insert(Index state) {
+        UUID id = state.ids.next();
+        state.index.put(id, Boolean.TRUE);
+        state.inserted.add(id);
+        return state.index.remove(state.inserted.poll());
+    }
+}
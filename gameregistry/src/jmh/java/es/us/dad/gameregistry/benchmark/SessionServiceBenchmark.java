@@ -0,0 +1,63 @@
+package es.us.dad.gameregistry.benchmark;
+
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository;
+import es.us.dad.gameregistry.server.service.SessionService;
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the session service on top of an in-memory repository, so only the service, the
+ * promise chains and the GameSession mapping are measured. Run with {@code -prof gc} to compare the
+ * allocations per operation ({@code gc.alloc.rate.norm}) between builds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionServiceBenchmark {
+
+    private static final Map<String, Object> RESULT = Collections.<String, Object>singletonMap("score", 42);
+
+    private SessionService sessionService;
+    private UUID openSession;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // vert.x and the logger aren't used without cache and expiry wheel
+        sessionService = new SessionService(null, null, new InMemorySessionRepository());
+        openSession = Promises.await(sessionService.startSession("benchmark", "game")).getId();
+    }
+
+    @Benchmark
+    public GameSession getSession() {
+        return Promises.await(sessionService.getSession(openSession));
+    }
+
+    /**
+     * start, finish and delete a session, the repository doesn't grow
+     */
+    @Benchmark
+    public GameSession lifecycle() {
+        GameSession session = Promises.await(sessionService.startSession("benchmark", "game"));
+        GameSession finished = Promises.await(sessionService.finishSession("benchmark", session.getId(), RESULT));
+        Promises.await(sessionService.deleteSession("benchmark", session.getId()));
+        return finished;
+    }
+}
@@ -0,0 +1,92 @@
+package es.us.dad.gameregistry.client;
+
+import es.us.dad.gameregistry.benchmark.SampleSessions;
+import es.us.dad.gameregistry.shared.GameRegistryConstants;
+import es.us.dad.gameregistry.shared.domain.GameSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the responses by the client. With one session the body is a single session, like the
+ * replies of the session routes; with more it's a session list, like GET /api/v1/sessions.
+ *
+ * Lives in the client package because {@link GameRegistryResponse#fromHttpResponse} is package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameRegistryResponseBenchmark {
+
+    @Param({"1", "1000"})
+    public int sessions;
+
+    private HttpClientResponse response;
+    private Buffer body;
+
+    @Setup
+    public void setUp() {
+        List<GameSession> sample = SampleSessions.create(sessions);
+        JsonObject json;
+        if (sessions == 1) {
+            json = new JsonObject(sample.get(0).toJsonMap());
+        } else {
+            JsonArray array = new JsonArray();
+            for (GameSession session : sample)
+                array.addObject(new JsonObject(session.toJsonMap()));
+            json = new JsonObject().putNumber("count", sample.size()).putArray("sessions", array);
+        }
+        body = new Buffer(json.encode());
+
+        MultiMap headers = new CaseInsensitiveMultiMap();
+        headers.add(GameRegistryConstants.SERVER_TIMING_HEADER, "auth;dur=0.05, db_find;dur=1.20, json;dur=0.30, total;dur=1.60");
+        response = response(200, headers);
+    }
+
+    private static HttpClientResponse response(final int statusCode, final MultiMap headers) {
+        return (HttpClientResponse) Proxy.newProxyInstance(
+                GameRegistryResponseBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpClientResponse.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("statusCode".equals(method.getName()))
+                            return statusCode;
+                        if ("headers".equals(method.getName()))
+                            return headers;
+                        return null;
+                    }
+                });
+    }
+
+    @Benchmark
+    public GameRegistryResponse fromHttpResponse() {
+        GameRegistryResponse parsed = GameRegistryResponse.fromHttpResponse(response, body);
+        if (parsed.responseType != GameRegistryResponse.ResponseType.OK)
+            throw new IllegalStateException("Unexpected response: " + parsed.responseType, parsed.innerThrowable);
+        return parsed;
+    }
+}
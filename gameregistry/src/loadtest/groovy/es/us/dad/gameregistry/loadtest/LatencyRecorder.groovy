@@ -0,0 +1,96 @@
+package es.us.dad.gameregistry.loadtest
+
+import es.us.dad.gameregistry.client.GameRegistryResponse.ResponseType
+import es.us.dad.gameregistry.server.metrics.Histogram
+import groovy.transform.CompileStatic
+
+/**
+ * Latencies (microseconds) and outcomes of the requests of one phase of a load test, by operation.
+ * Operations which weren't known up front are added in the order they were first recorded.
+ */
+@CompileStatic
+class LatencyRecorder {
+
+    private final Map<String, Histogram> latencies = new LinkedHashMap<String, Histogram>()
+    private final Histogram total = new Histogram()
+    private final Map<String, Long> errors = new TreeMap<String, Long>()
+    // the histograms also count the values back-filled for coordinated omission
+    private long completed = 0
+    private long startedNanos = System.nanoTime()
+    private long finishedNanos = 0
+
+    LatencyRecorder(Collection<String> operations) {
+        for (String operation : operations)
+            latencies[operation] = new Histogram()
+    }
+
+    /**
+     * @param latencyNanos time from the intended start of the request to its response
+     * @param expectedInterval microseconds between the requests of a closed loop, to correct for
+     *                         coordinated omission, or 0
+     */
+    void record(String operation, long latencyNanos, long expectedInterval, ResponseType responseType) {
+        long micros = latencyNanos.intdiv(1000) as long
+        Histogram histogram = latencies[operation]
+        if (histogram == null) {
+            histogram = new Histogram()
+            latencies[operation] = histogram
+        }
+        histogram.recordWithExpectedInterval(micros, expectedInterval)
+        total.recordWithExpectedInterval(micros, expectedInterval)
+        completed++
+        if (responseType != ResponseType.OK)
+            errors[responseType.name()] = errors.getOrDefault(responseType.name(), 0L) + 1
+    }
+
+    void finish() {
+        finishedNanos = System.nanoTime()
+    }
+
+    boolean isFinished() {
+        return finishedNanos != 0
+    }
+
+    Histogram getTotal() {
+        return total
+    }
+
+    long getCompleted() {
+        return completed
+    }
+
+    /**
+     * @return seconds from the creation of the recorder until {@link #finish()}, or until now
+     */
+    double getElapsedSeconds() {
+        long finished = finishedNanos != 0 ? finishedNanos : System.nanoTime()
+        return (finished - startedNanos) / 1.0e9d
+    }
+
+    /**
+     * @return throughput, errors and the latency percentiles in milliseconds, overall and by operation
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> operations = [:]
+        latencies.each { String operation, Histogram histogram ->
+            if (histogram.count > 0)
+                operations[operation] = millis(histogram)
+        }
+
+        double seconds = getElapsedSeconds()
+        return [seconds   : seconds,
+                requests  : completed,
+                throughput: seconds > 0 ? completed / seconds : 0.0d,
+                errors    : errors,
+                latency   : millis(total),
+                operations: operations] as Map<String, Object>
+    }
+
+    private static Map<String, Object> millis(Histogram histogram) {
+        return [count: histogram.count,
+                p50  : histogram.valueAt(0.5d) / 1000.0d,
+                p99  : histogram.valueAt(0.99d) / 1000.0d,
+                p999 : histogram.valueAt(0.999d) / 1000.0d,
+                max  : histogram.max / 1000.0d] as Map<String, Object>
+    }
+}
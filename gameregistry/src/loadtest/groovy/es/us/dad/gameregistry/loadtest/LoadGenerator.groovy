@@ -0,0 +1,229 @@
+package es.us.dad.gameregistry.loadtest
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.client.GameRegistryClient
+import es.us.dad.gameregistry.client.GameRegistryResponse
+import es.us.dad.gameregistry.client.GameRegistryResponse.ResponseType
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.Handler
+
+/**
+ * Sends a mix of addSession, getSession, finishSession and getSessions requests through
+ * GameRegistryClients, either
+ *
+ * <ul>
+ *     <li>at a target rate (open loop): request {@code i} is due {@code i / rate} seconds after the
+ *     start and its latency is measured from then, so requests which had to wait for a slow
+ *     server or for a free slot count that wait too;</li>
+ *     <li>or with a fixed number of requests in flight (closed loop): every worker sends its next
+ *     request when the previous one completed, and the latencies are corrected for coordinated
+ *     omission with an expected interval between requests.</li>
+ * </ul>
+ *
+ * Requests are sent as one of {@code users} users, chosen at random. getSession and finishSession
+ * use the open sessions the user started earlier and start a new one if there aren't any.
+ */
+@CompileStatic
+class LoadGenerator {
+
+    public static final List<String> OPERATIONS = ["addSession", "getSession", "finishSession", "getSessions"]
+
+    // open sessions remembered by user
+    private static final int MAX_OPEN_SESSIONS = 100
+
+    private final Vertx vertx
+    private final List<GameRegistryClient> clients
+    private final List<String> operations = []
+    private final List<Integer> cumulativeWeights = []
+    private final int totalWeight
+    private final int users
+    private final List<Deque<UUID>> openSessions = []
+    private final Random random = new Random()
+
+    private int nextClient = 0
+    private int inFlight = 0
+
+    /**
+     * @param clients clients the requests are spread over, one connection each
+     * @param mix relative weights of the operations (see {@link #OPERATIONS})
+     * @param users number of distinct users
+     */
+    LoadGenerator(Vertx vertx, List<GameRegistryClient> clients, Map<String, Number> mix, int users) {
+        this.vertx = vertx
+        this.clients = clients
+        this.users = Math.max(1, users)
+
+        int weight = 0
+        mix.each { String operation, Number share ->
+            if (!OPERATIONS.contains(operation))
+                throw new IllegalArgumentException("Unknown operation: ${operation}")
+            if (share.intValue() > 0) {
+                weight += share.intValue()
+                operations.add(operation)
+                cumulativeWeights.add(weight)
+            }
+        }
+        if (weight == 0)
+            throw new IllegalArgumentException("The operation mix is empty.")
+        this.totalWeight = weight
+
+        for (int i = 0; i < this.users; i++)
+            openSessions.add(new ArrayDeque<UUID>())
+    }
+
+    /**
+     * Sends {@code rate} requests per second for {@code warmUp} and then {@code duration}
+     * milliseconds. At most {@code maxInFlight} requests are sent at a time, the others wait for a
+     * free slot.
+     *
+     * @return latencies of the requests due after the warm-up
+     */
+    Promise<LatencyRecorder> runAtRate(double rate, long warmUp, long duration, int maxInFlight) {
+        Promise<LatencyRecorder> p = new Promise<LatencyRecorder>()
+        LatencyRecorder warmUpRecorder = new LatencyRecorder(OPERATIONS)
+        LatencyRecorder[] recorder = [warmUpRecorder] as LatencyRecorder[]
+
+        long started = System.nanoTime()
+        long measured = started + warmUp * 1000000
+        long intervalNanos = Math.max(1L, (long) (1.0e9d / rate))
+        long total = (long) ((warmUp + duration) * rate / 1000.0d)
+        long[] sent = [0L] as long[]
+        Deque<Long> waiting = new ArrayDeque<Long>()
+        Closure sendWaiting
+
+        if (total == 0) {
+            p.fulfill(warmUpRecorder)
+            return p
+        }
+
+        sendWaiting = {
+            while (!waiting.isEmpty() && inFlight < maxInFlight) {
+                long intended = waiting.pollFirst()
+                LatencyRecorder target = intended < measured ? warmUpRecorder : recorder[0]
+                send(intended, target, 0, {
+                    sendWaiting.call()
+                    if (sent[0] == total && inFlight == 0 && waiting.isEmpty()) {
+                        recorder[0].finish()
+                        p.fulfill(recorder[0])
+                    }
+                })
+            }
+            return null
+        }
+
+        vertx.setPeriodic(1) { long timerId ->
+            long now = System.nanoTime()
+            if (recorder[0].is(warmUpRecorder) && now >= measured)
+                recorder[0] = new LatencyRecorder(OPERATIONS)
+
+            while (sent[0] < total && started + sent[0] * intervalNanos <= now) {
+                waiting.addLast(started + sent[0] * intervalNanos)
+                sent[0]++
+            }
+            sendWaiting.call()
+
+            if (sent[0] == total)
+                vertx.cancelTimer(timerId)
+        }
+
+        return p
+    }
+
+    /**
+     * Keeps {@code concurrency} requests in flight for {@code warmUp} and then {@code duration}
+     * milliseconds.
+     *
+     * @param expectedInterval microseconds one worker is expected to wait between its requests,
+     *                         to correct for coordinated omission, or 0 to use the median latency
+     *                         of the warm-up
+     * @return latencies of the requests sent after the warm-up
+     */
+    Promise<LatencyRecorder> runWithConcurrency(int concurrency, long warmUp, long duration, long expectedInterval) {
+        Promise<LatencyRecorder> p = new Promise<LatencyRecorder>()
+        LatencyRecorder warmUpRecorder = new LatencyRecorder(OPERATIONS)
+        LatencyRecorder[] recorder = [warmUpRecorder] as LatencyRecorder[]
+        long[] interval = [expectedInterval] as long[]
+
+        long started = System.nanoTime()
+        long measured = started + warmUp * 1000000
+        long finished = measured + duration * 1000000
+        int[] workers = [concurrency] as int[]
+        Closure next
+
+        next = {
+            long now = System.nanoTime()
+            if (now >= finished) {
+                if (--workers[0] == 0) {
+                    recorder[0].finish()
+                    p.fulfill(recorder[0])
+                }
+                return null
+            }
+            if (recorder[0].is(warmUpRecorder) && now >= measured) {
+                if (interval[0] <= 0)
+                    interval[0] = warmUpRecorder.total.valueAt(0.5d)
+                recorder[0] = new LatencyRecorder(OPERATIONS)
+            }
+
+            send(now, recorder[0], recorder[0].is(warmUpRecorder) ? 0 : interval[0], next)
+            return null
+        }
+
+        for (int i = 0; i < concurrency; i++)
+            next.call()
+
+        return p
+    }
+
+    private String pickOperation() {
+        int r = random.nextInt(totalWeight)
+        for (int i = 0; i < operations.size(); i++) {
+            if (r < cumulativeWeights[i])
+                return operations[i]
+        }
+        return operations[operations.size() - 1]
+    }
+
+    /**
+     * sends one request of the mix and calls {@code done} when it completed
+     */
+    private void send(long intended, LatencyRecorder recorder, long expectedInterval, Closure done) {
+        int user = random.nextInt(users)
+        Deque<UUID> open = openSessions[user]
+        GameRegistryClient client = clients[nextClient]
+        nextClient = (nextClient + 1) % clients.size()
+        client.setUser("loadtest-" + user).setToken("loadtest")
+
+        String operation = pickOperation()
+        if ((operation == "getSession" || operation == "finishSession") && open.isEmpty())
+            operation = "addSession"
+
+        String recorded = operation
+        inFlight++
+        Handler<GameRegistryResponse> handler = { GameRegistryResponse response ->
+            inFlight--
+            recorder.record(recorded, System.nanoTime() - intended, expectedInterval, response.responseType)
+            if (recorded == "addSession" && response.responseType == ResponseType.OK) {
+                open.addLast(response.sessions[0].id)
+                if (open.size() > MAX_OPEN_SESSIONS)
+                    open.pollFirst()
+            }
+            done.call()
+        } as Handler<GameRegistryResponse>
+
+        switch (operation) {
+            case "addSession":
+                client.addSession("loadtest", handler)
+                break
+            case "getSession":
+                client.getSession(open.peekLast(), handler)
+                break
+            case "finishSession":
+                client.finishSession(open.pollFirst(), [score: random.nextInt(1000)] as Map<String, Object>, handler)
+                break
+            default:
+                client.getSessions([user: client.user], handler)
+        }
+    }
+}
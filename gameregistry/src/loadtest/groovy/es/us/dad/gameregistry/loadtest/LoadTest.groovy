@@ -0,0 +1,119 @@
+package es.us.dad.gameregistry.loadtest
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.client.GameRegistryClient
+import es.us.dad.gameregistry.server.RestServer
+import groovy.json.JsonOutput
+import org.vertx.groovy.platform.Container
+import org.vertx.groovy.platform.Verticle
+import org.vertx.java.core.Future
+import org.vertx.java.core.logging.Logger
+
+/**
+ * Load test of a registry server, see {@link LoadGenerator}. Deploys an embedded rest server (by
+ * default with the in-memory session store), runs the load, logs throughput and latency
+ * percentiles, optionally writes them to a JSON file and exits.
+ *
+ * Run with {@code ./gradlew loadtest}, the configuration is read from conf-loadtest.json. The
+ * embedded server shares the vert.x instance with the load generator; set {@code embedded} to
+ * false to test a server which was started separately on localhost.
+ */
+class LoadTest extends Verticle {
+
+    private final String DEFAULT_HOST = "localhost"
+    private final int DEFAULT_PORT = 8090
+
+    /**
+     * deploys {@code instances} instances of the rest server, also used by {@link Replay}
+     */
+    static Promise<Void> startServer(Container container, Map<String, Object> serverConfig, int instances) {
+        Promise<Void> p = new Promise<Void>()
+
+        container.deployVerticle("groovy:" + RestServer.class.getName(), serverConfig, instances, { asyncResult ->
+            if (asyncResult.failed)
+                p.reject(asyncResult.cause())
+            else
+                p.fulfill(null)
+        })
+
+        return p
+    }
+
+    def start(Future<Void> startedResult) {
+        def config = container.config
+        String host = config.getOrDefault("host", DEFAULT_HOST)
+        int port = config.getOrDefault("port", DEFAULT_PORT) as int
+        boolean embedded = config.getOrDefault("embedded", true)
+        int server_instances = config.getOrDefault("server_instances", 1) as int
+        double rate = config.getOrDefault("rate", 0) as double // requests per second, 0 for a fixed concurrency
+        int concurrency = config.getOrDefault("concurrency", 16) as int // requests in flight without a rate
+        long expected_interval = config.getOrDefault("expected_interval", 0) as long // microseconds, 0 for the warm-up median
+        int max_in_flight = config.getOrDefault("max_in_flight", 1000) as int // with a rate
+        int connections = config.getOrDefault("connections", 8) as int
+        int users = config.getOrDefault("users", 1000) as int
+        long warm_up = config.getOrDefault("warm_up", 10) as long // seconds
+        long duration = config.getOrDefault("duration", 30) as long // seconds
+        Map<String, Number> mix = config.getOrDefault("mix", [addSession   : 20, getSession: 50,
+                                                              finishSession: 20, getSessions: 10]) as Map<String, Number>
+        String report_file = config.getOrDefault("report_file", null)
+        Map<String, Object> serverConfig = [host: host, port: port, session_store: "memory"]
+        serverConfig.putAll(config.getOrDefault("server", [:]) as Map<String, Object>)
+
+        Promise<Void> started = new Promise<Void>()
+        if (embedded)
+            started = startServer(container, serverConfig, server_instances)
+        else
+            started.fulfill(null)
+
+        started.then({
+            startedResult.setResult(null)
+
+            // one client per connection, GameRegistryClient uses one HttpClient with a single connection
+            InetAddress address = InetAddress.getByName(host)
+            List<GameRegistryClient> clients = (1..Math.max(1, connections)).collect {
+                new GameRegistryClient(address, port, vertx.toJavaVertx())
+            }
+            LoadGenerator generator = new LoadGenerator(vertx, clients, mix, users)
+
+            if (rate > 0) {
+                container.logger.info("Sending ${rate} requests/s for ${warm_up} + ${duration} seconds...")
+                return generator.runAtRate(rate, warm_up * 1000, duration * 1000, max_in_flight)
+            }
+            container.logger.info("Sending requests with ${concurrency} in flight for ${warm_up} + ${duration} seconds...")
+            return generator.runWithConcurrency(concurrency, warm_up * 1000, duration * 1000, expected_interval)
+        }).then({ LatencyRecorder recorder ->
+            Map<String, Object> report = recorder.toMap()
+            report["config"] = [rate       : rate, concurrency: rate > 0 ? null : concurrency, connections: connections,
+                                users      : users, duration: duration, mix: mix]
+            log(container.logger, report)
+            if (report_file != null) {
+                File file = new File(report_file)
+                file.parentFile?.mkdirs()
+                file.text = JsonOutput.prettyPrint(JsonOutput.toJson(report))
+                container.logger.info("Report written to ${file.absolutePath}")
+            }
+            container.exit()
+        }).fail({ Exception ex ->
+            container.logger.error("Load test failed: ${ex.message}", ex)
+            if (!startedResult.complete())
+                startedResult.setFailure(ex)
+            container.exit()
+        })
+    }
+
+    /**
+     * logs the throughput and the latencies of a report of {@link LatencyRecorder#toMap()}
+     */
+    static void log(Logger logger, Map<String, Object> report) {
+        logger.info(String.format(Locale.ROOT, "%d requests in %.1f s: %.1f requests/s, errors: %s",
+                report.requests, report.seconds, report.throughput, report.errors))
+        logger.info(String.format(Locale.ROOT, "%-28s %9s %9s %9s %9s %9s",
+                "operation", "count", "p50 ms", "p99 ms", "p999 ms", "max ms"))
+        Map<String, Map> rows = new LinkedHashMap<String, Map>(report.operations as Map<String, Map>)
+        rows["all"] = report.latency as Map
+        rows.each { String operation, Map latency ->
+            logger.info(String.format(Locale.ROOT, "%-28s %9d %9.2f %9.2f %9.2f %9.2f",
+                    operation, latency.count, latency.p50, latency.p99, latency.p999, latency.max))
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package es.us.dad.gameregistry.loadtest
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.client.GameRegistryClient
+import es.us.dad.gameregistry.server.metrics.CapturedRequest
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.vertx.groovy.platform.Verticle
+import org.vertx.java.core.Future
+import org.vertx.java.core.logging.Logger
+
+/**
+ * Replays a request capture (see {@link Replayer}) against an embedded rest server, like
+ * {@link LoadTest}, or against a server on localhost. Logs the latencies by route, writes them to a
+ * JSON report and, given the report of an earlier run as {@code baseline}, compares the two.
+ *
+ * Run with {@code ./gradlew replay}, the configuration is read from conf-replay.json.
+ */
+class Replay extends Verticle {
+
+    private final String DEFAULT_HOST = "localhost"
+    private final int DEFAULT_PORT = 8090
+
+    def start(Future<Void> startedResult) {
+        def config = container.config
+        String capture_file = config.getOrDefault("capture_file", "capture.bin")
+        double speed = config.getOrDefault("speed", 1) as double // 2 replays twice as fast
+        String host = config.getOrDefault("host", DEFAULT_HOST)
+        int port = config.getOrDefault("port", DEFAULT_PORT) as int
+        boolean embedded = config.getOrDefault("embedded", true)
+        int server_instances = config.getOrDefault("server_instances", 1) as int
+        int connections = config.getOrDefault("connections", 8) as int
+        int max_in_flight = config.getOrDefault("max_in_flight", 1000) as int
+        String report_file = config.getOrDefault("report_file", null)
+        String baseline = config.getOrDefault("baseline", null) // report of an earlier replay
+        Map<String, Object> serverConfig = [host: host, port: port, session_store: "memory"]
+        serverConfig.putAll(config.getOrDefault("server", [:]) as Map<String, Object>)
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(capture_file)))
+        CapturedRequest.readHeader(input)
+
+        Promise<Void> started = new Promise<Void>()
+        if (embedded)
+            started = LoadTest.startServer(container, serverConfig, server_instances)
+        else
+            started.fulfill(null)
+
+        Replayer replayer
+        started.then({
+            startedResult.setResult(null)
+
+            InetAddress address = InetAddress.getByName(host)
+            List<GameRegistryClient> clients = (1..Math.max(1, connections)).collect {
+                new GameRegistryClient(address, port, vertx.toJavaVertx())
+            }
+            replayer = new Replayer(vertx, clients, input, speed, max_in_flight)
+            container.logger.info("Replaying ${capture_file} at ${speed}x...")
+            return replayer.run()
+        }).then({ LatencyRecorder recorder ->
+            input.close()
+            Map<String, Object> report = recorder.toMap()
+            report["skipped"] = replayer.skipped
+            report["config"] = [capture_file: capture_file, speed: speed, connections: connections]
+            LoadTest.log(container.logger, report)
+            container.logger.info("${replayer.skipped} requests skipped.")
+            if (baseline != null)
+                compare(container.logger, new JsonSlurper().parse(new File(baseline)) as Map<String, Object>, report)
+            if (report_file != null) {
+                File file = new File(report_file)
+                file.parentFile?.mkdirs()
+                file.text = JsonOutput.prettyPrint(JsonOutput.toJson(report))
+                container.logger.info("Report written to ${file.absolutePath}")
+            }
+            container.exit()
+        }).fail({ Exception ex ->
+            container.logger.error("Replay failed: ${ex.message}", ex)
+            input.close()
+            if (!startedResult.complete())
+                startedResult.setFailure(ex)
+            container.exit()
+        })
+    }
+
+    /**
+     * logs the latency percentiles of both reports by route, with the change relative to the baseline
+     */
+    static void compare(Logger logger, Map<String, Object> baseline, Map<String, Object> report) {
+        logger.info(String.format(Locale.ROOT, "%-28s %22s %22s %22s", "compared to baseline (ms)", "p50", "p99", "p999"))
+        Map<String, Map> before = new LinkedHashMap<String, Map>(baseline.operations as Map<String, Map>)
+        before["all"] = baseline.latency as Map
+        Map<String, Map> after = new LinkedHashMap<String, Map>(report.operations as Map<String, Map>)
+        after["all"] = report.latency as Map
+
+        after.each { String operation, Map latency ->
+            Map previous = before[operation]
+            if (previous == null)
+                return
+            List<String> columns = ["p50", "p99", "p999"].collect { String percentile ->
+                double a = previous[percentile] as double
+                double b = latency[percentile] as double
+                String change = a > 0 ? String.format(Locale.ROOT, "%+.0f%%", (b - a) * 100 / a) : "-"
+                String.format(Locale.ROOT, "%8.2f %8.2f %5s", a, b, change)
+            }
+            logger.info(String.format(Locale.ROOT, "%-28s %22s %22s %22s", operation, columns[0], columns[1], columns[2]))
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package es.us.dad.gameregistry.loadtest
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.client.GameRegistryClient
+import es.us.dad.gameregistry.client.GameRegistryResponse
+import es.us.dad.gameregistry.client.GameRegistryResponse.ResponseType
+import es.us.dad.gameregistry.server.metrics.CapturedRequest
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.Handler
+import org.vertx.java.core.json.DecodeException
+import org.vertx.java.core.json.JsonObject
+
+/**
+ * Re-issues the requests of a capture (see {@link es.us.dad.gameregistry.server.metrics.RequestCapture})
+ * through GameRegistryClients, {@code speed} times as fast as they were captured.
+ *
+ * Like the open loop of {@link LoadGenerator}, latencies are measured from the time a request was
+ * due, and at most {@code maxInFlight} requests are sent at a time. They are recorded by route.
+ *
+ * The sessions the replay starts get new ids, which replace the captured ones in the later
+ * requests; a request for a session whose start is still in flight waits for it. Sessions
+ * started before the capture began are unknown to the test instance. Requests of routes the
+ * client doesn't support, and session starts whose body wasn't captured, are skipped.
+ */
+@CompileStatic
+class Replayer {
+
+    private static final String START_SESSION = "POST /api/v1/sessions"
+    private static final String GET_SESSIONS = "GET /api/v1/sessions"
+    private static final String GET_SESSION = "GET /api/v1/sessions/:id"
+    private static final String FINISH_SESSION = "PUT /api/v1/sessions/:id"
+    private static final String DELETE_SESSION = "DELETE /api/v1/sessions/:id"
+
+    private final Vertx vertx
+    private final List<GameRegistryClient> clients
+    private final DataInput input
+    private final double speed
+    private final int maxInFlight
+
+    // captured session id -> id of the session started by the replay
+    private final Map<UUID, UUID> sessionIds = new HashMap<UUID, UUID>()
+    // captured session id of a start in flight -> requests waiting for it
+    private final Map<UUID, List<Closure>> awaitingStart = new HashMap<UUID, List<Closure>>()
+
+    private int nextClient = 0
+    private int inFlight = 0
+    private long skipped = 0
+
+    /**
+     * @param input capture, positioned after its header
+     * @param speed 1 to replay the requests as fast as they arrived, 2 for twice as fast, ...
+     */
+    Replayer(Vertx vertx, List<GameRegistryClient> clients, DataInput input, double speed, int maxInFlight) {
+        this.vertx = vertx
+        this.clients = clients
+        this.input = input
+        this.speed = speed
+        this.maxInFlight = maxInFlight
+    }
+
+    long getSkipped() {
+        return skipped
+    }
+
+    /**
+     * @return latencies of the replayed requests, by route
+     */
+    Promise<LatencyRecorder> run() {
+        Promise<LatencyRecorder> p = new Promise<LatencyRecorder>()
+        LatencyRecorder recorder = new LatencyRecorder([START_SESSION, GET_SESSION, FINISH_SESSION, GET_SESSIONS,
+                                                        DELETE_SESSION])
+        CapturedRequest[] next = [CapturedRequest.read(input)] as CapturedRequest[]
+        if (next[0] == null) {
+            recorder.finish()
+            p.fulfill(recorder)
+            return p
+        }
+
+        long started = System.nanoTime()
+        long firstTimestamp = next[0].timestamp
+        Deque<CapturedRequest> waiting = new ArrayDeque<CapturedRequest>()
+        Deque<Long> intendedTimes = new ArrayDeque<Long>()
+        Closure sendWaiting
+
+        sendWaiting = {
+            while (!waiting.isEmpty() && inFlight < maxInFlight)
+                send(waiting.pollFirst(), intendedTimes.pollFirst(), recorder, sendWaiting)
+
+            if (next[0] == null && waiting.isEmpty() && inFlight == 0 && !recorder.finished) {
+                recorder.finish()
+                p.fulfill(recorder)
+            }
+            return null
+        }
+
+        vertx.setPeriodic(1) { long timerId ->
+            long now = System.nanoTime()
+            while (next[0] != null) {
+                long intended = started + (long) ((next[0].timestamp - firstTimestamp) * 1000000 / speed)
+                if (intended > now)
+                    break
+                waiting.addLast(next[0])
+                intendedTimes.addLast(intended)
+                next[0] = CapturedRequest.read(input)
+            }
+
+            if (next[0] == null)
+                vertx.cancelTimer(timerId)
+            sendWaiting.call()
+        }
+
+        return p
+    }
+
+    private static Map<String, Object> parseBody(CapturedRequest request) {
+        if (request.body.length == 0) {
+            // too large to be captured: send as much, so the server rejects it again
+            return request.bodySize > 0 ? [padding: "x" * request.bodySize] as Map<String, Object> : null
+        }
+        try {
+            return new JsonObject(new String(request.body, "UTF-8")).toMap()
+        } catch (DecodeException ignored) {
+            return null
+        }
+    }
+
+    private static Map<String, String> queryOf(String uri) {
+        Map<String, String> params = [:]
+        int query = uri.indexOf('?')
+        if (query < 0)
+            return params
+
+        for (String param : uri.substring(query + 1).split("&")) {
+            int equals = param.indexOf('=')
+            if (equals > 0)
+                params[URLDecoder.decode(param.substring(0, equals), "UTF-8")] = URLDecoder.decode(param.substring(equals + 1), "UTF-8")
+        }
+        return params
+    }
+
+    private static UUID sessionIdOf(String uri) {
+        int query = uri.indexOf('?')
+        String path = query < 0 ? uri : uri.substring(0, query)
+        try {
+            return UUID.fromString(path.substring(path.lastIndexOf('/') + 1))
+        } catch (IllegalArgumentException ignored) {
+            return null
+        }
+    }
+
+    /**
+     * sends one captured request and calls {@code done} once it completed; skipped requests are only counted
+     */
+    private void send(CapturedRequest request, long intended, LatencyRecorder recorder, Closure done) {
+        String route = request.method + " " + request.route
+        GameRegistryClient client = clients[nextClient]
+        nextClient = (nextClient + 1) % clients.size()
+        String user = request.user ?: "replay"
+        Closure afterStart = null
+
+        Handler<GameRegistryResponse> handler = { GameRegistryResponse response ->
+            inFlight--
+            recorder.record(route, System.nanoTime() - intended, 0, response.responseType)
+            afterStart?.call(response)
+            done.call()
+        } as Handler<GameRegistryResponse>
+
+        Closure call
+        UUID capturedId = null
+        switch (route) {
+            case START_SESSION:
+                Object game = parseBody(request)?.get("game")
+                if (!(game instanceof String))
+                    break
+                UUID startedId = request.sessionId
+                if (startedId != null) {
+                    awaitingStart[startedId] = []
+                    afterStart = { GameRegistryResponse response ->
+                        if (response.responseType == ResponseType.OK)
+                            sessionIds[startedId] = response.sessions[0].id
+                        awaitingStart.remove(startedId)?.each { Closure waiting -> waiting.call() }
+                    }
+                }
+                call = { client.setUser(user).setToken("replay").addSession((String) game, handler) }
+                break
+            case GET_SESSIONS:
+                call = { client.setUser(user).setToken("replay").getSessions(queryOf(request.uri), handler) }
+                break
+            case GET_SESSION:
+                capturedId = sessionIdOf(request.uri)
+                call = { client.setUser(user).setToken("replay").getSession(sessionIds.get(capturedId) ?: capturedId, handler) }
+                break
+            case FINISH_SESSION:
+                capturedId = sessionIdOf(request.uri)
+                Map<String, Object> result = parseBody(request) ?: [:] as Map<String, Object>
+                call = { client.setUser(user).setToken("replay").finishSession(sessionIds.get(capturedId) ?: capturedId, result, handler) }
+                break
+            case DELETE_SESSION:
+                capturedId = sessionIdOf(request.uri)
+                call = { client.setUser(user).setToken("replay").deleteSession(sessionIds.get(capturedId) ?: capturedId, handler) }
+                break
+        }
+
+        if (call == null || (route != START_SESSION && route != GET_SESSIONS && capturedId == null)) {
+            skipped++
+            return
+        }
+
+        inFlight++
+        if (capturedId != null && awaitingStart.containsKey(capturedId))
+            awaitingStart[capturedId].add(call)
+        else
+            call.call()
+    }
+}
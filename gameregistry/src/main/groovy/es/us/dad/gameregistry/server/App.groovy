@@ -11,6 +11,8 @@ class App extends Verticle {
 		def mod_mongo = "io.vertx~mod-mongo-persistor~2.1.1"
         Promise<Void> p = new Promise<Void>()
 		
+		// the session repository stores binary ids, written as {"$binary": ..., "$type": 4}
+		mongoConfig.putIfAbsent("use_mongo_types", true)
 		container.logger.info("Deploying module: ${mod_mongo}")
         // deploy mongodb persistor
         container.deployModule(mod_mongo, mongoConfig, { asyncResult ->
@@ -44,9 +46,21 @@ class App extends Verticle {
 
         Map<String, Object> appConfig = container.config
         Map<String, Object> mongoConfig = appConfig.getOrDefault("mongo-persistor", [:]) as Map<String, Object>
+        // optional second persistor for read-only queries (ie with a secondary read preference)
+        Map<String, Object> mongoReadConfig = appConfig.getOrDefault("mongo-persistor-read", null) as Map<String, Object>
         Map<String, Object> gameRegistryConfig = appConfig.getOrDefault("game-registry", [:]) as Map<String, Object>
 
+        if (mongoConfig.containsKey("address"))
+            gameRegistryConfig.putIfAbsent("db_address", mongoConfig["address"])
+
         startMongoVerticle(mongoConfig).then({
+            if (mongoReadConfig == null)
+                return null
+
+            // the rest server sends read-only queries to this persistor
+            gameRegistryConfig.putIfAbsent("db_read_address", mongoReadConfig["address"])
+            return startMongoVerticle(mongoReadConfig)
+        }).then({
             return startRestServer(gameRegistryConfig)
         }).then({
             startedResult.setResult(null)
@@ -1,17 +1,45 @@
 package es.us.dad.gameregistry.server
 
+import es.us.dad.gameregistry.server.controller.AdminController
+import es.us.dad.gameregistry.server.controller.Controller
+import es.us.dad.gameregistry.server.controller.MetricsController
+import es.us.dad.gameregistry.server.controller.ReadyController
 import es.us.dad.gameregistry.server.controller.SessionController
 import es.us.dad.gameregistry.server.controller.SessionsController
 import es.us.dad.gameregistry.server.controller.StaticFilesController
+import es.us.dad.gameregistry.server.metrics.EventLoopWatchdog
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.metrics.RequestCapture
+import es.us.dad.gameregistry.server.metrics.RequestTracker
+import es.us.dad.gameregistry.server.repository.AdmissionControlledRepository
+import es.us.dad.gameregistry.server.repository.FaultInjectingRepository
+import es.us.dad.gameregistry.server.repository.HazelcastSessionRepository
 import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository
+import es.us.dad.gameregistry.server.repository.MongoLock
 import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.repository.PersistorClient
+import es.us.dad.gameregistry.server.repository.VegasLimit
+import es.us.dad.gameregistry.server.service.CacheInvalidationBus
+import es.us.dad.gameregistry.server.service.CleanupJob
 import es.us.dad.gameregistry.server.service.DebugPromiseService
+import es.us.dad.gameregistry.server.service.HmacLoginService
 import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.service.ISessionIdGenerator
 import es.us.dad.gameregistry.server.service.LoginServiceMock
+import es.us.dad.gameregistry.server.service.RandomSessionIdGenerator
+import es.us.dad.gameregistry.server.service.RateLimiter
+import es.us.dad.gameregistry.server.service.RemoteLoginService
+import es.us.dad.gameregistry.server.service.SessionCache
+import es.us.dad.gameregistry.server.service.SessionExpiryWheel
+import es.us.dad.gameregistry.server.service.SessionIdMigration
 import es.us.dad.gameregistry.server.service.SessionService
 import es.us.dad.gameregistry.server.service.StaticFilesService
+import es.us.dad.gameregistry.server.service.TimeOrderedSessionIdGenerator
+import es.us.dad.gameregistry.server.service.WarmUp
 import org.vertx.groovy.core.http.RouteMatcher
 import org.vertx.groovy.platform.Verticle
+import org.vertx.java.core.Future
 
 class RestServer extends Verticle {
 
@@ -19,7 +47,11 @@ class RestServer extends Verticle {
     private final int DEFAULT_PORT = 8080
     private final String DEFAULT_STATIC_WEB = "/doc";
 
-    def start() {
+    private EventLoopWatchdog watchdog
+    private RequestCapture capture
+    private RemoteLoginService remoteLogin
+
+    def start(Future<Void> startedResult) {
         def config = container.config
         String host = config.getOrDefault("host", DEFAULT_HOST) as String
         int port = config.getOrDefault("port", DEFAULT_PORT) as int
@@ -27,12 +59,154 @@ class RestServer extends Verticle {
         boolean debug_promise = config.getOrDefault("debug_promise", false)
         long cleanup_interval = config.getOrDefault("cleanup_interval", 60*60) as long // seconds
         long gamesession_maxage = config.getOrDefault("gamesession_maxage", 60*60*24) as long // seconds
+        String db_address = config.getOrDefault("db_address", MongoSessionRepository.DEFAULT_ADDRESS)
+        String db_read_address = config.getOrDefault("db_read_address", null)
+        long read_your_writes_window = config.getOrDefault("read_your_writes_window", 1000) as long // milliseconds
+        long slow_query_threshold = config.getOrDefault("slow_query_threshold", 100) as long // milliseconds, 0 disables the log
+        long db_timeout = config.getOrDefault("db_timeout", PersistorClient.DEFAULT_TIMEOUT) as long // milliseconds
+        String session_store = config.getOrDefault("session_store", "mongo") // mongo, hazelcast or memory
+        String session_ids = config.getOrDefault("session_ids", "random") // random or time_ordered
+        // sessions stored by older versions with their id in "id" are still found and migrated
+        boolean legacy_session_ids = config.getOrDefault("legacy_session_ids", false)
+        long hot_store_ttl = config.getOrDefault("hot_store_ttl", gamesession_maxage) as long // seconds
+        int session_cache_size = config.getOrDefault("session_cache_size", 0) as int // 0 disables the cache
+        long session_cache_ttl = config.getOrDefault("session_cache_ttl", 60) as long // seconds
+        long cache_invalidation_delay = config.getOrDefault("cache_invalidation_delay", 20) as long // milliseconds
+        boolean expiry_wheel = config.getOrDefault("expiry_wheel", false)
+        long expiry_wheel_tick = config.getOrDefault("expiry_wheel_tick", 1000) as long // milliseconds
+        int expiry_wheel_size = config.getOrDefault("expiry_wheel_size", 512) as int // slots
+        int expiry_batch_size = config.getOrDefault("expiry_batch_size", 100) as int
+        int cleanup_batch_size = config.getOrDefault("cleanup_batch_size", 100) as int
+        long cleanup_batch_delay = config.getOrDefault("cleanup_batch_delay", 100) as long // milliseconds
+        long cleanup_lease = config.getOrDefault("cleanup_lease", 60) as long // seconds
+        boolean server_timing = config.getOrDefault("server_timing", false)
+        double server_timing_log_sample = config.getOrDefault("server_timing_log_sample", 0) as double // 0 to 1
+        long event_loop_probe_interval = config.getOrDefault("event_loop_probe_interval", 100) as long // milliseconds
+        long blocked_threshold = config.getOrDefault("blocked_threshold", 1000) as long // milliseconds, 0 disables the watchdog
+        boolean admission_control = config.getOrDefault("admission_control", false)
+        int admission_max_limit = config.getOrDefault("admission_max_limit", 200) as int // repository calls in flight
+        double admission_read_share = config.getOrDefault("admission_read_share", 0.8) as double // 0 to 1
+        double rate_limit = config.getOrDefault("rate_limit", 0) as double // requests per second and user, 0 disables
+        double rate_limit_burst = config.getOrDefault("rate_limit_burst", 20) as double // requests
+        // ie {"POST /api/v1/sessions": {"rate": 1, "burst": 5}}
+        Map<String, Map> route_rate_limits = config.getOrDefault("route_rate_limits", [:]) as Map<String, Map>
+        int rate_limiter_max_buckets = config.getOrDefault("rate_limiter_max_buckets", 10000) as int
+        long max_body_size = config.getOrDefault("max_body_size", Controller.DEFAULT_MAX_BODY_SIZE) as long // bytes
+        int warm_up_connections = config.getOrDefault("warm_up_connections", 10) as int
+        int warm_up_requests = config.getOrDefault("warm_up_requests", 2000) as int // 0 skips exercising the routes
+        long warm_up_timeout = config.getOrDefault("warm_up_timeout", 30000) as long // milliseconds
+        List<String> admin_users = config.getOrDefault("admin_users", []) as List<String>
+        String capture_file = config.getOrDefault("capture_file", null) // null disables the request capture
+        long capture_max_size = config.getOrDefault("capture_max_size", 100) as long // megabytes
+        boolean fault_injection = config.getOrDefault("fault_injection", false) // never in production
+        // ie {"find": {"latency": 20, "distribution": "exponential", "error_rate": 0.01}}, see FaultInjectingRepository
+        Map<String, Map> faults = config.getOrDefault("faults", [:]) as Map<String, Map>
+        String login_service = config.getOrDefault("login_service", "mock") // mock, hmac or remote
+        // base64-encoded secrets by key id, ie {"2015-06": "..."}; all of them are accepted
+        Map<String, String> token_keys = config.getOrDefault("token_keys", [:]) as Map<String, String>
+        long token_clock_skew = config.getOrDefault("token_clock_skew", 30) as long // seconds
+        long token_max_lifetime = config.getOrDefault("token_max_lifetime", 60*60*24) as long // seconds
+        String login_host = config.getOrDefault("login_host", "localhost")
+        int login_port = config.getOrDefault("login_port", 8081) as int
+        String login_path = config.getOrDefault("login_path", "/api/v1/tokens/validate")
+        int login_max_pool_size = config.getOrDefault("login_max_pool_size", 10) as int // connections
+        long login_batch_delay = config.getOrDefault("login_batch_delay", 2) as long // milliseconds
+        int login_max_batch = config.getOrDefault("login_max_batch", 100) as int // tokens
+        long login_timeout = config.getOrDefault("login_timeout", 1000) as long // milliseconds
+
+        MetricsRegistry metrics = new MetricsRegistry()
+        if (blocked_threshold > 0) {
+            watchdog = new EventLoopWatchdog(vertx, container.logger, metrics, event_loop_probe_interval, blocked_threshold)
+            watchdog.start()
+        }
+        if (capture_file != null) {
+            capture = new RequestCapture(vertx, container.logger, metrics, capture_file, capture_max_size * 1024 * 1024)
+            capture.start()
+        }
+        RequestTracker tracker = new RequestTracker(metrics, container.logger, server_timing, server_timing_log_sample,
+                                                    capture)
 
         RouteMatcher rm = new RouteMatcher()
 
         ILoginService loginService = new LoginServiceMock()
-        ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger)
-        SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository)
+        if (login_service == "hmac") {
+            // verifies signed tokens in-process, see HmacLoginService for the format
+            loginService = new HmacLoginService(token_keys, token_clock_skew, token_max_lifetime, metrics)
+        } else if (login_service == "remote") {
+            // asks the login component, coalescing and batching the validations
+            remoteLogin = new RemoteLoginService(vertx, container.logger, metrics, login_host, login_port, login_path,
+                                                 login_max_pool_size, login_batch_delay, login_max_batch, login_timeout)
+            loginService = remoteLogin
+        }
+        PersistorClient persistor = new PersistorClient(vertx, container.logger, metrics, slow_query_threshold, db_timeout)
+        MongoSessionRepository mongoRepository = new MongoSessionRepository(persistor, container.logger, db_address,
+                db_read_address, read_your_writes_window, legacy_session_ids)
+        ISessionRepository sessionRepository = mongoRepository
+        if (session_store == "memory") {
+            // single node without a database, for load tests
+            sessionRepository = new InMemorySessionRepository()
+        } else if (legacy_session_ids) {
+            // rewrites the legacy sessions with binary ids, one node at a time
+            new SessionIdMigration(vertx, container.logger, mongoRepository,
+                    new MongoLock(persistor, container.logger, db_address, "session_id_migration"), metrics,
+                    cleanup_batch_size, cleanup_batch_delay, cleanup_lease * 1000).start()
+        }
+        FaultInjectingRepository faultInjection = null
+        if (fault_injection) {
+            // degrade the database on purpose, the faults can be changed on /api/v1/admin/faults
+            faultInjection = new FaultInjectingRepository(vertx, container.logger, sessionRepository, metrics)
+            faultInjection.configure(faults)
+            faultInjection.start()
+            sessionRepository = faultInjection
+        }
+        if (session_store == "hazelcast") {
+            // keep open sessions in a map shared by all nodes, mongo only gets written asynchronously
+            sessionRepository = new HazelcastSessionRepository(vertx, container.logger,
+                    HazelcastSessionRepository.clusterOrEmbeddedInstance(), sessionRepository, hot_store_ttl)
+        }
+        if (admission_control) {
+            // fail fast with 503 instead of queueing up behind a slow database
+            sessionRepository = new AdmissionControlledRepository(sessionRepository,
+                    new VegasLimit(20, 4, admission_max_limit), metrics, admission_read_share, 1)
+        }
+        SessionCache sessionCache = null
+        CacheInvalidationBus invalidations = null
+        if (session_cache_size > 0) {
+            sessionCache = new SessionCache(session_cache_size, session_cache_ttl * 1000)
+            invalidations = new CacheInvalidationBus(vertx, sessionCache, metrics, cache_invalidation_delay, 100)
+            invalidations.start()
+        }
+        SessionExpiryWheel expiryWheel = null
+        if (expiry_wheel) {
+            // expires open sessions on time, the periodic cleanup below only catches what the wheel missed
+            expiryWheel = new SessionExpiryWheel(vertx, container.logger, sessionRepository, invalidations, metrics,
+                    gamesession_maxage, expiry_wheel_tick, expiry_wheel_size, expiry_batch_size)
+            expiryWheel.start().fail({ Exception ex ->
+                container.logger.error("Could not start the session expiry wheel: ${ex.message}")
+            })
+        }
+        // time-ordered ids keep the inserts of new sessions at the end of the index
+        ISessionIdGenerator idGenerator = session_ids == "time_ordered" ? new TimeOrderedSessionIdGenerator()
+                                                                        : new RandomSessionIdGenerator()
+        SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository,
+                                                           sessionCache, invalidations, expiryWheel, idGenerator)
+        // only one node of the cluster deletes stale sessions at a time; the memory store belongs to a
+        // single node and runs without a persistor, which would never answer the lock
+        MongoLock cleanupLock = session_store == "memory" ? null
+                : new MongoLock(persistor, container.logger, db_address, "session_cleanup")
+        CleanupJob cleanupJob = new CleanupJob(vertx, container.logger, sessionRepository, cleanupLock, invalidations, metrics,
+                gamesession_maxage, cleanup_batch_size, cleanup_batch_delay, cleanup_lease * 1000)
+        RateLimiter rateLimiter = null
+        if (rate_limit > 0 || !route_rate_limits.isEmpty()) {
+            Map<String, RateLimiter.Limit> routeLimits = route_rate_limits.collectEntries { String route, Map limit ->
+                // a missing rate or burst is rejected like a non-positive one
+                [route, new RateLimiter.Limit((limit["rate"] ?: 0) as double, (limit["burst"] ?: 0) as double)]
+            }
+            rateLimiter = new RateLimiter(rate_limit > 0 ? new RateLimiter.Limit(rate_limit, rate_limit_burst) : null,
+                    routeLimits, rate_limiter_max_buckets, metrics)
+        }
+        WarmUp warmUp = new WarmUp(vertx, container.logger, sessionRepository, sessionCache, host, port,
+                                   warm_up_connections, warm_up_requests, warm_up_timeout, tracker.warmUpKey)
         StaticFilesService fileService = new StaticFilesService("web", vertx)
 
         // This was asked by Pablo (the boss). He wants to see a test where a promise
@@ -44,19 +218,43 @@ class RestServer extends Verticle {
             new DebugPromiseService(20, vertx).registerUrls(rm)
 
         // create instances of all controllers and register the URLs to the RouteMatcher
-        new SessionsController(loginService, sessionService).registerUrls(rm)
-        new SessionController(loginService, sessionService).registerUrls(rm)
+        new SessionsController(loginService, sessionService, rateLimiter, max_body_size).registerUrls(rm, tracker)
+        new SessionController(loginService, sessionService, rateLimiter, max_body_size).registerUrls(rm, tracker)
+        new AdminController(loginService, cleanupJob, faultInjection, admin_users).registerUrls(rm, tracker)
+        new MetricsController(loginService, metrics).registerUrls(rm)
+        new ReadyController(loginService, warmUp).registerUrls(rm)
         // The StaticFilesController should be the last registered controller becouse regular
         // expressions and might be bound to '/', catching any request even if a more specific
         // route exists (but was registered afterward).
-        new StaticFilesController(loginService, fileService, container.logger, staticWebBasePath).registerUrls(rm)
+        new StaticFilesController(loginService, fileService, container.logger, staticWebBasePath).registerUrls(rm, tracker)
 
         // start periodic cleanup task
         vertx.setPeriodic(cleanup_interval * 1000, {
-            sessionService.cleanup(gamesession_maxage)
+            cleanupJob.run()
+        })
+
+        // listen before the warm-up, it exercises the routes; /ready tells load balancers to wait
+        vertx.createHttpServer().requestHandler(rm.asClosure()).listen(port, host, { asyncResult ->
+            if (asyncResult.failed) {
+                startedResult.setFailure(asyncResult.cause)
+                return
+            }
+
+            container.logger.info("GameRegistry REST Server listening on ${host}:${port}, warming up...")
+            warmUp.run().then({
+                container.logger.info("GameRegistry REST Server ready.")
+                startedResult.setResult(null)
+            }).fail({ Exception ex ->
+                container.logger.error("GameRegistry REST Server ready, the warm-up failed: ${ex.message}")
+                if (!startedResult.complete())
+                    startedResult.setResult(null)
+            })
         })
+    }
 
-        vertx.createHttpServer().requestHandler(rm.asClosure()).listen(port, host)
-        container.logger.info("GameRegistry REST Server ready, listening on ${host}:${port}.")
+    def stop() {
+        watchdog?.stop()
+        capture?.stop()
+        remoteLogin?.close()
     }
 }
@@ -0,0 +1,130 @@
+package es.us.dad.gameregistry.server.controller
+
+import es.us.dad.gameregistry.server.exception.BadRequestException
+import es.us.dad.gameregistry.server.exception.ForbiddenException
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.server.repository.FaultInjectingRepository
+import es.us.dad.gameregistry.server.service.CleanupJob
+import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.util.*
+import io.netty.handler.codec.http.HttpResponseStatus
+import org.vertx.groovy.core.http.HttpServerRequest
+
+/**
+ * Operations on the background jobs of a registry node and the faults injected into its session
+ * repository, only allowed for the configured admin users.
+ */
+class AdminController extends Controller {
+
+    private final CleanupJob cleanupJob
+    private final FaultInjectingRepository faults
+    private final Set<String> adminUsers
+
+    public AdminController(ILoginService loginService, CleanupJob cleanupJob, Collection<String> adminUsers) {
+        this(loginService, cleanupJob, null, adminUsers)
+    }
+
+    /**
+     * @param faults repository to inject faults into, or {@code null} if fault injection is disabled
+     */
+    public AdminController(ILoginService loginService, CleanupJob cleanupJob, FaultInjectingRepository faults,
+                           Collection<String> adminUsers) {
+        super(loginService)
+        this.cleanupJob = cleanupJob
+        this.faults = faults
+        this.adminUsers = new HashSet<String>(adminUsers)
+    }
+
+    private boolean requireAdmin(HttpServerRequest request) {
+        if (adminUsers.contains(getCurrentUser(request)))
+            return true
+
+        sendErrorResponse(request, new ForbiddenException("Only admin users can use the admin routes."))
+        return false
+    }
+
+    private boolean requireFaultInjection(HttpServerRequest request) {
+        if (!requireAdmin(request))
+            return false
+        if (faults != null)
+            return true
+
+        sendErrorResponse(request, new ObjectNotFoundException("Fault injection is disabled."))
+        return false
+    }
+
+    @Authenticated
+    @GET("/api/v1/admin/cleanup")
+    public void getCleanup(HttpServerRequest request) {
+        if (requireAdmin(request))
+            sendJsonResponse(request, cleanupJob.status())
+    }
+
+    @Authenticated
+    @POST("/api/v1/admin/cleanup/run")
+    public void runCleanup(HttpServerRequest request) {
+        if (requireAdmin(request)) {
+            cleanupJob.run()
+            sendJsonResponse(request, cleanupJob.status())
+        }
+    }
+
+    @Authenticated
+    @POST("/api/v1/admin/cleanup/pause")
+    public void pauseCleanup(HttpServerRequest request) {
+        if (requireAdmin(request)) {
+            cleanupJob.pause()
+            sendJsonResponse(request, cleanupJob.status())
+        }
+    }
+
+    @Authenticated
+    @POST("/api/v1/admin/cleanup/resume")
+    public void resumeCleanup(HttpServerRequest request) {
+        if (requireAdmin(request)) {
+            cleanupJob.resume()
+            sendJsonResponse(request, cleanupJob.status())
+        }
+    }
+
+    @Authenticated
+    @GET("/api/v1/admin/faults")
+    public void getFaults(HttpServerRequest request) {
+        if (requireFaultInjection(request))
+            sendJsonResponse(request, faults.config)
+    }
+
+    /**
+     * replaces the faults of every node, see {@link FaultInjectingRepository} for the format
+     */
+    @Authenticated
+    @PUT("/api/v1/admin/faults")
+    public void setFaults(HttpServerRequest request) {
+        if (!requireFaultInjection(request))
+            return
+
+        getRequestBody(request).then({ Map<String, Object> body ->
+            Map<String, FaultInjectingRepository.Fault> parsed
+            try {
+                parsed = FaultInjectingRepository.parse(body)
+            } catch (IllegalArgumentException ex) {
+                sendErrorResponse(request, new BadRequestException(ex.message))
+                return
+            }
+            faults.publish(body)
+            sendJsonResponse(request, parsed.collectEntries { operation, fault -> [operation, fault.toMap()] })
+        }).fail({ Exception ex ->
+            sendErrorResponse(request, ex)
+        })
+    }
+
+    @Authenticated
+    @DELETE("/api/v1/admin/faults")
+    public void clearFaults(HttpServerRequest request) {
+        if (requireFaultInjection(request)) {
+            faults.publish([:])
+            sendJsonResponse(request, [:], HttpResponseStatus.NO_CONTENT)
+        }
+    }
+
+}
@@ -1,136 +1,353 @@
 package es.us.dad.gameregistry.server.controller
 
 import com.darylteo.vertx.promises.groovy.Promise
+import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.databind.ObjectMapper
 import es.us.dad.gameregistry.server.exception.AuthenticationException
 import es.us.dad.gameregistry.server.exception.BadRequestException
+import es.us.dad.gameregistry.server.exception.PayloadTooLargeException
 import es.us.dad.gameregistry.server.exception.RestException
+import es.us.dad.gameregistry.server.exception.TooManyRequestsException
+import es.us.dad.gameregistry.server.metrics.CapturedRequest
+import es.us.dad.gameregistry.server.metrics.RequestTracker
+import es.us.dad.gameregistry.server.metrics.RouteMetrics
+import es.us.dad.gameregistry.server.metrics.ServerTiming
+import es.us.dad.gameregistry.server.metrics.TrackedRequest
 import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.service.RateLimiter
 import es.us.dad.gameregistry.server.util.*
 import es.us.dad.gameregistry.shared.GameRegistryConstants
 import es.us.dad.gameregistry.shared.domain.DomainObject
 import groovy.json.JsonOutput
+import groovy.transform.CompileStatic
+import io.netty.buffer.ByteBufInputStream
 import io.netty.handler.codec.http.HttpResponseStatus
 import org.vertx.groovy.core.buffer.Buffer
 import org.vertx.groovy.core.http.HttpServerRequest
 import org.vertx.groovy.core.http.RouteMatcher
-import org.vertx.java.core.json.DecodeException
-import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
 
 import java.lang.annotation.Annotation
+import java.lang.reflect.InvocationTargetException
 import java.lang.reflect.Method
 
+/**
+ * Base class of the controllers: registers their annotated methods as routes and helps with
+ * authentication, request bodies and JSON responses.
+ *
+ * Compiled statically, it is on the path of every request. Groovy 2.3 still calls protected methods and
+ * reads fields dynamically from closures, so the helpers are public and the fields used by callbacks are
+ * copied into local variables first.
+ */
+@CompileStatic
 class Controller {
 
+    public static final long DEFAULT_MAX_BODY_SIZE = 64 * 1024
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper()
+
     private final ILoginService loginService
+    private final RateLimiter rateLimiter
+    private final long maxBodySize
 
     public Controller(ILoginService loginService) {
+        this(loginService, null)
+    }
+
+    public Controller(ILoginService loginService, RateLimiter rateLimiter) {
+        this(loginService, rateLimiter, DEFAULT_MAX_BODY_SIZE)
+    }
+
+    /**
+     * @param rateLimiter limits the requests of the authenticated users, or {@code null}
+     * @param maxBodySize maximum size of a request body in bytes
+     */
+    public Controller(ILoginService loginService, RateLimiter rateLimiter, long maxBodySize) {
         this.loginService = loginService
+        this.rateLimiter = rateLimiter
+        this.maxBodySize = maxBodySize
     }
 
-    protected
+    public
     static void sendJsonResponse(HttpServerRequest request, Object jsonResponse, HttpResponseStatus responseStatus) {
         request.response.putHeader("Content-Type", "application/json")
         request.response.setStatusCode(responseStatus.code())
 
-        if (jsonResponse)
-            request.response.end(JsonOutput.toJson(jsonResponse))
-        else
+        if (jsonResponse) {
+            long started = System.nanoTime()
+            String json = JsonOutput.toJson(jsonResponse)
+            timingOf(request)?.add("json", started)
+            request.response.end(json)
+        } else {
             request.response.end()
+        }
     }
 
-    protected
+    public
     static void sendJsonResponse(HttpServerRequest request, DomainObject jsonResponse, HttpResponseStatus responseStatus) {
         sendJsonResponse(request, jsonResponse?.toJsonMap(), responseStatus)
     }
 
-    protected
+    public
     static void sendJsonResponse(HttpServerRequest request, Exception exception, HttpResponseStatus responseStatus) {
         sendJsonResponse(request, ["error": exception.message], responseStatus)
     }
 
-    protected static void sendJsonResponse(HttpServerRequest request, DomainObject jsonResponse) {
+    public static void sendJsonResponse(HttpServerRequest request, DomainObject jsonResponse) {
         sendJsonResponse(request, jsonResponse?.toJsonMap(), HttpResponseStatus.OK)
     }
 
-    protected static void sendJsonResponse(HttpServerRequest request, Map jsonResponse) {
+    public static void sendJsonResponse(HttpServerRequest request, Map jsonResponse) {
         sendJsonResponse(request, jsonResponse, HttpResponseStatus.OK)
     }
 
-    protected static void sendErrorResponse(HttpServerRequest request, Exception ex) {
-        if (ex instanceof RestException)
-            sendJsonResponse(request, ex, ex.responseStatus)
-        else
-            sendJsonResponse(request, ex, HttpResponseStatus.INTERNAL_SERVER_ERROR)
+    public static void sendErrorResponse(HttpServerRequest request, Exception ex) {
+        // the body is built here, statically compiled the exception flow-typed as a RestException
+        // was serialized as a whole instead of going through sendJsonResponse(..., Exception, ...)
+        Map<String, Object> error = ["error": (Object) ex.message]
+        if (ex instanceof RestException) {
+            RestException restException = (RestException) ex
+            restException.responseHeaders.each { String name, String value -> request.response.putHeader(name, value) }
+            sendJsonResponse(request, error, restException.responseStatus)
+        } else {
+            sendJsonResponse(request, error, HttpResponseStatus.INTERNAL_SERVER_ERROR)
+        }
+    }
+
+    /**
+     * answers a request whose handler threw an exception with a 500, if it wasn't answered already
+     */
+    public static void sendUnexpectedError(HttpServerRequest request, Exception ex) {
+        Throwable cause = ex instanceof InvocationTargetException ? ex.cause : ex
+        try {
+            sendErrorResponse(request, cause instanceof Exception ? (Exception) cause : new RuntimeException(cause))
+        } catch (IllegalStateException ignored) {
+            // the response was already written
+        }
+    }
+
+    /**
+     * sends the error of a failed result
+     * @return true if the result failed and the error was sent
+     */
+    public static boolean sendIfFailed(HttpServerRequest request, AsyncResult<?> result) {
+        if (result.succeeded())
+            return false
+
+        sendErrorResponse(request, Async.causeOf(result))
+        return true
     }
 
-    protected static String getCurrentUser(HttpServerRequest request) {
+    public static String getCurrentUser(HttpServerRequest request) {
         return request.headers.get(GameRegistryConstants.GAMEREGISTRY_USER_HEADER)
     }
 
-    protected static String getCurrentToken(HttpServerRequest request) {
+    public static String getCurrentToken(HttpServerRequest request) {
         return request.headers.get(GameRegistryConstants.GAMEREGISTRY_TOKEN_HEADER)
     }
 
-    protected void requireAuthentication(HttpServerRequest request, Closure authenticatedFunction) {
+    /**
+     * @return phase timings of the request, or {@code null} if they aren't recorded
+     */
+    public static ServerTiming timingOf(HttpServerRequest request) {
+        return request instanceof TrackedRequest ? ((TrackedRequest) request).timing : null
+    }
+
+    /**
+     * @return capture record of the request, or {@code null} if it isn't captured
+     */
+    public static CapturedRequest capturedOf(HttpServerRequest request) {
+        return request instanceof TrackedRequest ? ((TrackedRequest) request).captured : null
+    }
+
+    /**
+     * @return true for the requests of the warm-up, which aren't authenticated
+     */
+    public static boolean isWarmUp(HttpServerRequest request) {
+        return request instanceof TrackedRequest && ((TrackedRequest) request).warmUp
+    }
+
+    public void requireAuthentication(HttpServerRequest request, Closure authenticatedFunction) {
+        requireAuthentication(request, null, authenticatedFunction)
+    }
+
+    /**
+     * calls {@code authenticatedFunction} if the user is authenticated and within its rate limits
+     * @param route method and path pattern of the route ("POST /api/v1/sessions"), or {@code null}
+     *
+     * The request is paused while the login service answers, so the body isn't lost before
+     * {@code authenticatedFunction} gets to register its handlers.
+     */
+    public void requireAuthentication(HttpServerRequest request, String route, Closure authenticatedFunction) {
         String user = getCurrentUser(request)
         String token = getCurrentToken(request)
+        RateLimiter rateLimiter = this.rateLimiter
+
+        long started = System.nanoTime()
+        request.pause()
+        loginService.isAuthenticated(user, token, { AsyncResult<Boolean> authenticated ->
+            try {
+                timingOf(request)?.add("auth", started)
+                if (sendIfFailed(request, authenticated))
+                    return
+                if (!authenticated.result()) {
+                    sendErrorResponse(request, new AuthenticationException())
+                    return
+                }
 
-        Promise<Boolean> authenticated = loginService.isAuthenticated(user, token)
-        authenticated.then({ boolean isAuthenticated ->
-            if (isAuthenticated)
-                authenticatedFunction.call()
-            else
-                sendErrorResponse(request, new AuthenticationException())
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+                long wait = rateLimiter != null ? rateLimiter.acquire(user, route) : 0
+                if (wait > 0)
+                    sendErrorResponse(request, new TooManyRequestsException(wait))
+                else
+                    authenticatedFunction.call()
+            } catch (Exception ex) {
+                sendUnexpectedError(request, ex)
+            } finally {
+                request.resume()
+            }
+        } as Handler<AsyncResult<Boolean>>)
     }
 
-    protected static Promise<JsonObject> getRequestBody(HttpServerRequest request) {
-        Promise<JsonObject> p = new Promise<JsonObject>()
+    /**
+     * reads the request body and parses it as a JSON object
+     */
+    protected Promise<Map<String, Object>> getRequestBody(HttpServerRequest request) {
+        Promise<Map<String, Object>> p = new Promise<Map<String, Object>>()
+        readRequestBody(request, Async.handlerOf(p))
+        return p
+    }
+
+    /**
+     * reads the request body and parses it as a JSON object
+     *
+     * The body is collected chunk by chunk; once it exceeds {@code maxBodySize} (or if the
+     * Content-Length says it will) the handler gets a {@link PayloadTooLargeException} right away
+     * and the rest of the body is discarded. The collected bytes are parsed in one pass, without
+     * converting them to a String first.
+     */
+    public void readRequestBody(HttpServerRequest request, Handler<AsyncResult<Map<String, Object>>> handler) {
+        long maxBodySize = this.maxBodySize
+        CapturedRequest captured = capturedOf(request)
+
+        String contentLength = request.headers.get("Content-Length")
+        if (contentLength != null && contentLength.isLong() && contentLength.toLong() > maxBodySize) {
+            if (captured != null)
+                captured.bodySize = (int) Math.min(contentLength.toLong(), Integer.MAX_VALUE)
+            Async.fail(handler, new PayloadTooLargeException(maxBodySize))
+            return
+        }
 
-        request.bodyHandler { Buffer buffer ->
+        Buffer body = new Buffer()
+        boolean tooLarge = false
+        request.dataHandler { Buffer chunk ->
+            if (tooLarge)
+                return
+
+            if (body.length + chunk.length > maxBodySize) {
+                tooLarge = true
+                if (captured != null)
+                    captured.bodySize = body.length + chunk.length
+                Async.fail(handler, new PayloadTooLargeException(maxBodySize))
+                return
+            }
+            body.appendBuffer(chunk)
+        }
+        request.endHandler {
+            if (tooLarge)
+                return
+            if (captured != null) {
+                captured.bodySize = body.length
+                captured.body = body.bytes
+            }
+
+            Map<String, Object> json
             try {
-                JsonObject body = new JsonObject(buffer.toString())
-                p.fulfill(body)
+                long started = System.nanoTime()
+                InputStream input = new ByteBufInputStream(body.toJavaBuffer().byteBuf)
+                json = JSON_MAPPER.readValue(input, Map.class) as Map<String, Object>
+                timingOf(request)?.add("body", started)
+            }
+            catch (JsonProcessingException ignored) {
+                json = null
             }
-            catch(DecodeException ignored) {
-                p.reject(new BadRequestException("The supplied request body is not valid JSON."))
+            // a body of null is valid JSON, but not a JSON object
+            if (json == null) {
+                Async.fail(handler, new BadRequestException("The supplied request body is not valid JSON."))
+                return
+            }
+            try {
+                Async.succeed(handler, json)
+            } catch (Exception ex) {
+                sendUnexpectedError(request, ex)
             }
         }
-
-        return p
     }
 
     public void registerUrls(RouteMatcher routeMatcher) {
+        registerUrls(routeMatcher, null)
+    }
+
+    /**
+     * @param tracker records the requests of every route, or {@code null}
+     */
+    public void registerUrls(RouteMatcher routeMatcher, RequestTracker tracker) {
+        Controller controller = this
         for (Method method : this.class.declaredMethods) {
             Authenticated authenticationRequired = method.getAnnotation(Authenticated.class)
 
             for (Annotation annotation : method.declaredAnnotations) {
+                String httpMethod
+                String path
+                if (annotation instanceof GET) {
+                    httpMethod = "GET"
+                    path = ((GET) annotation).value()
+                } else if (annotation instanceof POST) {
+                    httpMethod = "POST"
+                    path = ((POST) annotation).value()
+                } else if (annotation instanceof PUT) {
+                    httpMethod = "PUT"
+                    path = ((PUT) annotation).value()
+                } else if (annotation instanceof DELETE) {
+                    httpMethod = "DELETE"
+                    path = ((DELETE) annotation).value()
+                } else {
+                    continue
+                }
+
                 // create local variable so the method of the current iteration gets captured inside the closure and
                 // not the variable of the last loop iteration
                 // see http://blog.freeside.co/2013/03/29/groovy-gotcha-for-loops-and-closure-scope/
                 Method myMethod = method
+                // looked up once, so recording a request doesn't go through the registry
+                RouteMetrics routeMetrics = tracker?.route(httpMethod, path)
+                // key of the route's rate limit, built once instead of on every request
+                String route = httpMethod + " " + path
 
-                Closure closure = { HttpServerRequest request ->
-                    if (authenticationRequired != null) {
-                        requireAuthentication(request, {
-                            myMethod.invoke(this, request)
+                Closure closure = { HttpServerRequest originalRequest ->
+                    HttpServerRequest request = tracker != null ? tracker.track(originalRequest, routeMetrics) : originalRequest
+                    if (authenticationRequired != null && !isWarmUp(request)) {
+                        controller.requireAuthentication(request, route, {
+                            myMethod.invoke(controller, request)
                         })
                     } else {
                         // no authentication required
-                        myMethod.invoke(this, request)
+                        try {
+                            myMethod.invoke(controller, request)
+                        } catch (Exception ex) {
+                            sendUnexpectedError(request, ex)
+                        }
                     }
                 }
 
-                if (annotation instanceof GET) {
-                    routeMatcher.get(annotation.value(), closure)
-                } else if (annotation instanceof POST) {
-                    routeMatcher.post(annotation.value(), closure)
-                } else if (annotation instanceof PUT) {
-                    routeMatcher.put(annotation.value(), closure)
-                } else if (annotation instanceof DELETE) {
-                    routeMatcher.delete(annotation.value(), closure)
+                if (httpMethod == "GET") {
+                    routeMatcher.get(path, closure)
+                } else if (httpMethod == "POST") {
+                    routeMatcher.post(path, closure)
+                } else if (httpMethod == "PUT") {
+                    routeMatcher.put(path, closure)
+                } else if (httpMethod == "DELETE") {
+                    routeMatcher.delete(path, closure)
                 }
             }
         }
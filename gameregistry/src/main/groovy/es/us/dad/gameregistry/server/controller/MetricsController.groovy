@@ -0,0 +1,29 @@
+package es.us.dad.gameregistry.server.controller
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.metrics.PrometheusFormat
+import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.util.*
+import io.netty.handler.codec.http.HttpResponseStatus
+import org.vertx.groovy.core.http.HttpServerRequest
+
+/**
+ * Exposes the metrics of the registry node for Prometheus, without authentication.
+ */
+class MetricsController extends Controller {
+
+    private final MetricsRegistry metrics
+
+    public MetricsController(ILoginService loginService, MetricsRegistry metrics) {
+        super(loginService)
+        this.metrics = metrics
+    }
+
+    @GET("/metrics")
+    public void getMetrics(HttpServerRequest request) {
+        request.response.putHeader("Content-Type", PrometheusFormat.CONTENT_TYPE)
+        request.response.setStatusCode(HttpResponseStatus.OK.code())
+        request.response.end(PrometheusFormat.format(metrics))
+    }
+
+}
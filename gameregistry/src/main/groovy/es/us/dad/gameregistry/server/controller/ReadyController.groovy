@@ -0,0 +1,28 @@
+package es.us.dad.gameregistry.server.controller
+
+import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.service.WarmUp
+import es.us.dad.gameregistry.server.util.*
+import io.netty.handler.codec.http.HttpResponseStatus
+import org.vertx.groovy.core.http.HttpServerRequest
+
+/**
+ * Readiness probe for load balancers, without authentication: 503 until the warm-up finished,
+ * 200 afterwards.
+ */
+class ReadyController extends Controller {
+
+    private final WarmUp warmUp
+
+    public ReadyController(ILoginService loginService, WarmUp warmUp) {
+        super(loginService)
+        this.warmUp = warmUp
+    }
+
+    @GET("/ready")
+    public void getReady(HttpServerRequest request) {
+        HttpResponseStatus status = warmUp.isReady() ? HttpResponseStatus.OK : HttpResponseStatus.SERVICE_UNAVAILABLE
+        sendJsonResponse(request, [ready: warmUp.isReady()], status)
+    }
+
+}
@@ -3,19 +3,32 @@ package es.us.dad.gameregistry.server.controller
 import es.us.dad.gameregistry.server.exception.BadRequestException
 import es.us.dad.gameregistry.server.exception.MethodNotAllowedException
 import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.service.RateLimiter
 import es.us.dad.gameregistry.server.service.SessionService
 import es.us.dad.gameregistry.server.util.*
 import es.us.dad.gameregistry.shared.domain.GameSession
+import groovy.transform.CompileStatic
 import io.netty.handler.codec.http.HttpResponseStatus
 import org.vertx.groovy.core.http.HttpServerRequest
-import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
 
+@CompileStatic
 class SessionController extends Controller {
 
     private final SessionService sessionService
 
     public SessionController(ILoginService loginService, SessionService sessionService) {
-        super(loginService)
+        this(loginService, sessionService, null)
+    }
+
+    public SessionController(ILoginService loginService, SessionService sessionService, RateLimiter rateLimiter) {
+        this(loginService, sessionService, rateLimiter, Controller.DEFAULT_MAX_BODY_SIZE)
+    }
+
+    public SessionController(ILoginService loginService, SessionService sessionService, RateLimiter rateLimiter,
+                             long maxBodySize) {
+        super(loginService, rateLimiter, maxBodySize)
         this.sessionService = sessionService
     }
 
@@ -37,11 +50,10 @@ class SessionController extends Controller {
             return
         }
 
-        sessionService.getSession(id).then({ GameSession session ->
-            sendJsonResponse(request, session)
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+        sessionService.getSession(id, timingOf(request), { AsyncResult<GameSession> session ->
+            if (!sendIfFailed(request, session))
+                sendJsonResponse(request, session.result())
+        } as Handler<AsyncResult<GameSession>>)
     }
 
     @Authenticated
@@ -59,14 +71,16 @@ class SessionController extends Controller {
             return
         }
 
-        getRequestBody(request).then({ JsonObject body ->
-            Map<String, Object> resultMap = body != null ? body.toMap() : null
-            return sessionService.finishSession(user, id, resultMap)
-        }).then({ GameSession session ->
-            sendJsonResponse(request, session)
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+        SessionService sessionService = this.sessionService
+        readRequestBody(request, { AsyncResult<Map<String, Object>> resultMap ->
+            if (sendIfFailed(request, resultMap))
+                return
+
+            sessionService.finishSession(user, id, resultMap.result(), timingOf(request), { AsyncResult<GameSession> session ->
+                if (!sendIfFailed(request, session))
+                    sendJsonResponse(request, session.result())
+            } as Handler<AsyncResult<GameSession>>)
+        } as Handler<AsyncResult<Map<String, Object>>>)
     }
 
     @Authenticated
@@ -78,11 +92,10 @@ class SessionController extends Controller {
             return
         }
 
-        sessionService.deleteSession(user, id).then({
-            sendJsonResponse(request, [:], HttpResponseStatus.NO_CONTENT)
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+        sessionService.deleteSession(user, id, timingOf(request), { AsyncResult<Void> deleted ->
+            if (!sendIfFailed(request, deleted))
+                sendJsonResponse(request, [:], HttpResponseStatus.NO_CONTENT)
+        } as Handler<AsyncResult<Void>>)
     }
 
 }
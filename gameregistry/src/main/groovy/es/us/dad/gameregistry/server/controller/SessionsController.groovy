@@ -4,48 +4,94 @@ import com.hazelcast.util.StringUtil
 import es.us.dad.gameregistry.server.exception.BadRequestException
 import es.us.dad.gameregistry.shared.domain.GameSession
 import es.us.dad.gameregistry.server.exception.MethodNotAllowedException
+import es.us.dad.gameregistry.server.metrics.CapturedRequest
 import es.us.dad.gameregistry.server.service.ILoginService
+import es.us.dad.gameregistry.server.service.RateLimiter
 import es.us.dad.gameregistry.server.service.SessionService
 import es.us.dad.gameregistry.server.util.*
+import groovy.transform.CompileStatic
 import io.netty.handler.codec.http.HttpResponseStatus
 import org.vertx.groovy.core.http.HttpServerRequest
-import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
 
+@CompileStatic
 class SessionsController extends Controller {
 
     private final SessionService sessionService
 
     public SessionsController(ILoginService loginService, SessionService sessionService) {
-        super(loginService)
+        this(loginService, sessionService, null)
+    }
+
+    public SessionsController(ILoginService loginService, SessionService sessionService, RateLimiter rateLimiter) {
+        this(loginService, sessionService, rateLimiter, Controller.DEFAULT_MAX_BODY_SIZE)
+    }
+
+    public SessionsController(ILoginService loginService, SessionService sessionService, RateLimiter rateLimiter,
+                              long maxBodySize) {
+        super(loginService, rateLimiter, maxBodySize)
         this.sessionService = sessionService
     }
 
     @GET("/api/v1/sessions")
     public void getSessions(HttpServerRequest request) {
         String user = request.params.get("user")
+        List<String> fields = fieldsOf(request.params.get("fields"))
+        if (fields != null && !GameSession.FIELDS.containsAll(fields)) {
+            sendErrorResponse(request, new BadRequestException("Unknown session fields requested. Valid fields are: " + GameSession.FIELDS.join(", ") + "."))
+            return
+        }
 
-        sessionService.findSessions(null, user).then({ List<GameSession> sessions ->
-            sendJsonResponse(request, [count: sessions.size(), sessions: sessions.collect { it.toJsonMap() }])
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+        sessionService.findSessions(null, user, fields, timingOf(request), { AsyncResult<List<GameSession>> found ->
+            if (sendIfFailed(request, found))
+                return
+            List<GameSession> sessions = found.result()
+            sendJsonResponse(request, [count: sessions.size(), sessions: sessions.collect { it.toJsonMap(fields) }])
+        } as Handler<AsyncResult<List<GameSession>>>)
+    }
+
+    /**
+     * @return the fields of a comma separated list, ex. "game,start", and the id, which is always
+     *         returned; or {@code null} if not given
+     */
+    private static List<String> fieldsOf(String param) {
+        if (param == null)
+            return null
+        List<String> fields = ["id"]
+        for (String field : param.split(",")) {
+            if (!field.trim().isEmpty())
+                fields.add(field.trim())
+        }
+        return fields
     }
 
     @Authenticated
     @POST("/api/v1/sessions")
     public void createSession(HttpServerRequest request) {
         String user = getCurrentUser(request)
+        SessionService sessionService = this.sessionService
+
+        readRequestBody(request, { AsyncResult<Map<String, Object>> body ->
+            if (sendIfFailed(request, body))
+                return
+            Object game = body.result()["game"]
+            if (!(game instanceof String) || ((String) game).isEmpty()) {
+                sendErrorResponse(request, new BadRequestException("""The game name is missing in the request body. Please supply a JSON in the request body, ex. {"game": "test game"}"""))
+                return
+            }
 
-        getRequestBody(request).then({ JsonObject body ->
-            String game = body.getString("game")
-            if (game == null || game.isEmpty())
-                throw new BadRequestException("""The game name is missing in the request body. Please supply a JSON in the request body, ex. {"game": "test game"}""")
-            return sessionService.startSession(user, game)
-        }).then({ GameSession newSession ->
-            sendJsonResponse(request, newSession, HttpResponseStatus.CREATED)
-        }).fail({ Exception ex ->
-            sendErrorResponse(request, ex)
-        })
+            sessionService.startSession(user, (String) game, timingOf(request), { AsyncResult<GameSession> started ->
+                if (sendIfFailed(request, started))
+                    return
+                GameSession newSession = started.result()
+                // a replay of the capture maps the sessions it starts to this one
+                CapturedRequest captured = capturedOf(request)
+                if (captured != null)
+                    captured.sessionId = newSession.id
+                sendJsonResponse(request, newSession, HttpResponseStatus.CREATED)
+            } as Handler<AsyncResult<GameSession>>)
+        } as Handler<AsyncResult<Map<String, Object>>>)
     }
 
     @PUT("/api/v1/sessions")
@@ -1,5 +1,7 @@
 package es.us.dad.gameregistry.server.controller
 
+import es.us.dad.gameregistry.server.metrics.RequestTracker
+import es.us.dad.gameregistry.server.metrics.RouteMetrics
 import es.us.dad.gameregistry.server.service.ILoginService
 import es.us.dad.gameregistry.server.service.StaticFilesService
 import org.vertx.groovy.core.http.HttpServerRequest
@@ -22,11 +24,14 @@ class StaticFilesController extends Controller {
             this.base_path = base_path
     }
 
-    public void registerUrls(RouteMatcher routeMatcher) {
+    @Override
+    public void registerUrls(RouteMatcher routeMatcher, RequestTracker tracker) {
+        RouteMetrics routeMetrics = tracker?.route("GET", base_path + "/*")
         String regexp = "^" + base_path.replaceAll("\\/", "\\\\\\/") + "\\/(.*)"
         //String regexp = "\\/doc\\/(.*)"
         logger.info("Static file server bounded the server's resource path '${fileService.getWebRoot()}' to '${base_path}'.")
-        routeMatcher.allWithRegEx(regexp, { HttpServerRequest request ->
+        routeMatcher.allWithRegEx(regexp, { HttpServerRequest originalRequest ->
+            HttpServerRequest request = tracker != null ? tracker.track(originalRequest, routeMetrics) : originalRequest
             String withoutBasePath = request.path.substring(base_path.length())
 
             fileService.getSystemPathOf(withoutBasePath).then({ String system_path ->
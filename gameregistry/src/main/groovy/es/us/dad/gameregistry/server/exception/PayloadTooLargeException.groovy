@@ -0,0 +1,11 @@
+package es.us.dad.gameregistry.server.exception
+
+import io.netty.handler.codec.http.HttpResponseStatus
+
+class PayloadTooLargeException extends RestException {
+
+    public PayloadTooLargeException(long maxSize) {
+        super("The request body is larger than ${maxSize} bytes.".toString(), HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE)
+    }
+
+}
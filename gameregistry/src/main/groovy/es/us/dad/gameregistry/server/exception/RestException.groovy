@@ -20,4 +20,11 @@ class RestException extends RuntimeException {
         return responseStatus
     }
 
+    /**
+     * @return headers sent with the error response (ie Retry-After)
+     */
+    public Map<String, String> getResponseHeaders() {
+        return Collections.emptyMap()
+    }
+
 }
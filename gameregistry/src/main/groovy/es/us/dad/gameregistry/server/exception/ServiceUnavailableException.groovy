@@ -0,0 +1,26 @@
+package es.us.dad.gameregistry.server.exception
+
+import io.netty.handler.codec.http.HttpResponseStatus
+
+class ServiceUnavailableException extends RestException {
+
+    private final long retryAfter
+
+    /**
+     * @param retryAfter seconds after which the client may retry
+     */
+    public ServiceUnavailableException(String message, long retryAfter) {
+        super(message, HttpResponseStatus.SERVICE_UNAVAILABLE)
+        this.retryAfter = retryAfter
+    }
+
+    public long getRetryAfter() {
+        return retryAfter
+    }
+
+    @Override
+    public Map<String, String> getResponseHeaders() {
+        return ["Retry-After": Long.toString(retryAfter)]
+    }
+
+}
@@ -0,0 +1,27 @@
+package es.us.dad.gameregistry.server.exception
+
+import io.netty.handler.codec.http.HttpResponseStatus
+
+class TooManyRequestsException extends RestException {
+
+    private final long retryAfterMillis
+
+    /**
+     * @param retryAfterMillis milliseconds until the next request will be accepted
+     */
+    public TooManyRequestsException(long retryAfterMillis) {
+        super("Rate limit exceeded, retry in ${retryAfterMillis} ms.".toString(), HttpResponseStatus.TOO_MANY_REQUESTS)
+        this.retryAfterMillis = retryAfterMillis
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis
+    }
+
+    @Override
+    public Map<String, String> getResponseHeaders() {
+        // Retry-After only has a resolution of seconds
+        return ["Retry-After": Long.toString((retryAfterMillis + 999).intdiv(1000) as long)]
+    }
+
+}
@@ -0,0 +1,111 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+
+/**
+ * One API request of a capture (see {@link RequestCapture}) and its binary format.
+ *
+ * A capture file starts with the magic bytes {@code GRCAP} and a version byte, followed by the
+ * records, all big-endian:
+ *
+ * <pre>
+ * long   timestamp (milliseconds)
+ * byte   method (index of {@link #METHODS})
+ * UTF    route pattern, ie "/api/v1/sessions/:id"
+ * UTF    uri, with the query
+ * UTF    user, empty if there was none
+ * byte   1 if a session id follows, 0 otherwise
+ * long   most significant bits of the session id
+ * long   least significant bits of the session id
+ * int    size of the body as received
+ * int    number of captured body bytes (0 if the body wasn't read or was too large)
+ * byte[] captured body
+ * </pre>
+ *
+ * The session id is the one the response was about, so a replay can map the sessions it started
+ * to the captured ones.
+ */
+@CompileStatic
+class CapturedRequest {
+
+    public static final byte[] MAGIC = "GRCAP".getBytes("US-ASCII")
+    public static final int VERSION = 1
+    public static final List<String> METHODS = ["GET", "POST", "PUT", "DELETE"]
+
+    long timestamp
+    String method
+    String route
+    String uri
+    String user
+    UUID sessionId
+    int bodySize
+    byte[] body = new byte[0]
+
+    CapturedRequest() {
+    }
+
+    CapturedRequest(long timestamp, String method, String route, String uri, String user) {
+        this.timestamp = timestamp
+        this.method = method
+        this.route = route
+        this.uri = uri
+        this.user = user
+    }
+
+    static void writeHeader(DataOutput output) {
+        output.write(MAGIC)
+        output.writeByte(VERSION)
+    }
+
+    /**
+     * @throws IOException if the input isn't a capture of a supported version
+     */
+    static void readHeader(DataInput input) {
+        byte[] magic = new byte[MAGIC.length]
+        input.readFully(magic)
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Not a request capture.")
+        int version = input.readUnsignedByte()
+        if (version != VERSION)
+            throw new IOException("Unsupported capture version ${version}.")
+    }
+
+    void write(DataOutput output) {
+        output.writeLong(timestamp)
+        output.writeByte(METHODS.indexOf(method))
+        output.writeUTF(route)
+        output.writeUTF(uri)
+        output.writeUTF(user ?: "")
+        output.writeByte(sessionId != null ? 1 : 0)
+        if (sessionId != null) {
+            output.writeLong(sessionId.mostSignificantBits)
+            output.writeLong(sessionId.leastSignificantBits)
+        }
+        output.writeInt(bodySize)
+        output.writeInt(body.length)
+        output.write(body)
+    }
+
+    /**
+     * @return the next record, or {@code null} at the end of the input
+     */
+    static CapturedRequest read(DataInput input) {
+        CapturedRequest request = new CapturedRequest()
+        try {
+            request.timestamp = input.readLong()
+        } catch (EOFException ignored) {
+            return null
+        }
+        request.method = METHODS[input.readUnsignedByte()]
+        request.route = input.readUTF()
+        request.uri = input.readUTF()
+        String user = input.readUTF()
+        request.user = user.isEmpty() ? null : user
+        if (input.readUnsignedByte() == 1)
+            request.sessionId = new UUID(input.readLong(), input.readLong())
+        request.bodySize = input.readInt()
+        request.body = new byte[input.readInt()]
+        input.readFully(request.body)
+        return request
+    }
+}
@@ -0,0 +1,97 @@
+package es.us.dad.gameregistry.server.metrics
+
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Watches the event loop of a verticle.
+ *
+ * A periodic timer fires every {@code interval} milliseconds; how late it fires is the event
+ * loop lag, recorded in the {@code event_loop_lag_ms} histogram. A daemon thread checks that the
+ * timer keeps firing: if it didn't for {@code blockedThreshold} milliseconds, a handler is blocking
+ * the event loop and the stack of the event loop thread is logged, once per stall.
+ */
+class EventLoopWatchdog {
+
+    private final Vertx vertx
+    private final Logger logger
+    private final long interval
+    private final long blockedThreshold
+
+    private final Histogram lag
+    private final LongAdder blocked
+
+    private long timer = -1
+    private long expected
+    private volatile long heartbeat
+    private volatile Thread eventLoop
+    private Thread checker
+
+    /**
+     * @param interval milliseconds between two probes of the event loop
+     * @param blockedThreshold milliseconds the event loop may be busy before its stack is logged
+     */
+    public EventLoopWatchdog(Vertx vertx, Logger logger, MetricsRegistry metrics, long interval, long blockedThreshold) {
+        this.vertx = vertx
+        this.logger = logger
+        this.interval = interval
+        this.blockedThreshold = blockedThreshold
+
+        this.lag = metrics.histogram("event_loop_lag_ms")
+        this.blocked = metrics.counter("event_loop_blocked")
+    }
+
+    /**
+     * starts watching the event loop of the calling verticle, must be called on the event loop
+     */
+    public void start() {
+        eventLoop = Thread.currentThread()
+        heartbeat = System.currentTimeMillis()
+        expected = heartbeat + interval
+        timer = vertx.setPeriodic(interval, { probe() })
+
+        checker = new Thread({ check() }, "gameregistry-watchdog-" + eventLoop.name)
+        checker.daemon = true
+        checker.start()
+    }
+
+    public void stop() {
+        if (timer != -1)
+            vertx.cancelTimer(timer)
+        timer = -1
+        checker?.interrupt()
+    }
+
+    private void probe() {
+        long now = System.currentTimeMillis()
+        lag.record(now - expected)
+        expected = now + interval
+        heartbeat = now
+    }
+
+    private void check() {
+        long reported = -1
+        try {
+            while (!Thread.currentThread().interrupted) {
+                Thread.sleep(Math.max(1L, blockedThreshold.intdiv(2) as long))
+
+                long last = heartbeat
+                long busy = System.currentTimeMillis() - last
+                if (busy < blockedThreshold + interval || last == reported)
+                    continue
+
+                reported = last
+                blocked.increment()
+                StringBuilder stack = new StringBuilder()
+                eventLoop.stackTrace.each { StackTraceElement element ->
+                    stack << "\n\tat " << element
+                }
+                logger.warn("Event loop ${eventLoop.name} blocked for ${busy} ms:${stack}")
+            }
+        } catch (InterruptedException ignored) {
+            // stopped
+        }
+    }
+}
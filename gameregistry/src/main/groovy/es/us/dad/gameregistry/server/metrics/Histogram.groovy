@@ -0,0 +1,152 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Log-linear histogram of non-negative long values, in the spirit of HdrHistogram.
+ *
+ * Every power of two is split into 32 linear sub-buckets, so any recorded value is known
+ * with an error below 3.2%. Recording is lock-free and doesn't allocate: it only
+ * increments a couple of atomic counters.
+ */
+@CompileStatic
+class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS)
+    private final AtomicLong count = new AtomicLong()
+    private final AtomicLong sum = new AtomicLong()
+    private final AtomicLong max = new AtomicLong()
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket
+    }
+
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket
+
+        int shift = (bucket - SUB_BUCKETS).intdiv(SUB_BUCKETS) as int
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS
+        return ((long) (SUB_BUCKETS + subBucket)) << shift
+    }
+
+    static long highestValueOf(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestValueOf(bucket + 1) - 1 : Long.MAX_VALUE
+    }
+
+    /**
+     * records a value, negative values are recorded as 0
+     */
+    void record(long value) {
+        if (value < 0)
+            value = 0
+
+        counts.incrementAndGet(bucketOf(value))
+        count.incrementAndGet()
+        sum.addAndGet(value)
+
+        long currentMax = max.get()
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+            currentMax = max.get()
+    }
+
+    /**
+     * Records a value measured by a closed loop which sends the next request only after the
+     * previous one completed, and back-fills the values the requests which should have been sent
+     * meanwhile every {@code expectedInterval} would have seen (coordinated omission correction).
+     */
+    void recordWithExpectedInterval(long value, long expectedInterval) {
+        record(value)
+        if (expectedInterval <= 0)
+            return
+
+        for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval)
+            record(missed)
+    }
+
+    long getCount() {
+        return count.get()
+    }
+
+    long getSum() {
+        return sum.get()
+    }
+
+    long getMax() {
+        return max.get()
+    }
+
+    double getMean() {
+        long n = count.get()
+        return n == 0 ? 0.0d : sum.get() / (double) n
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1 (ie 0.99)
+     * @return highest value of the bucket the quantile falls into, capped at the maximum recorded value
+     */
+    long valueAt(double quantile) {
+        long n = count.get()
+        if (n == 0)
+            return 0
+
+        long rank = Math.max(1L, (long) Math.ceil(quantile * n))
+        long seen = 0
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i)
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max.get())
+        }
+        return max.get()
+    }
+
+    /**
+     * @return number of recorded values up to {@code value}, counting whole buckets only
+     */
+    long countAtOrBelow(long value) {
+        long seen = 0
+        for (int i = 0; i < BUCKETS && highestValueOf(i) <= value; i++)
+            seen += counts.get(i)
+        return seen
+    }
+
+    /**
+     * Calls {@code visitor} with the upper bound and the cumulative count of every non-empty bucket,
+     * in ascending order.
+     */
+    void eachBucket(Closure visitor) {
+        long cumulative = 0
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i)
+            if (c != 0) {
+                cumulative += c
+                visitor.call(highestValueOf(i), cumulative)
+            }
+        }
+    }
+
+    /**
+     * @return count, mean, max and the usual percentiles
+     */
+    Map<String, Object> toMap() {
+        return [count: getCount(),
+                mean : getMean(),
+                p50  : valueAt(0.5d),
+                p90  : valueAt(0.9d),
+                p99  : valueAt(0.99d),
+                p999 : valueAt(0.999d),
+                max  : getMax()] as Map<String, Object>
+    }
+}
@@ -0,0 +1,84 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Named counters, gauges and histograms of a registry node.
+ *
+ * Metrics are created on first use and live as long as the registry. Components look them up
+ * once and keep the reference, so recording a value never goes through the registry.
+ */
+@CompileStatic
+class MetricsRegistry {
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>()
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>()
+    private final ConcurrentMap<String, Closure<Number>> gauges = new ConcurrentHashMap<String, Closure<Number>>()
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<String, RouteMetrics>()
+
+    LongAdder counter(String name) {
+        LongAdder counter = counters.get(name)
+        if (counter == null) {
+            counters.putIfAbsent(name, new LongAdder())
+            counter = counters.get(name)
+        }
+        return counter
+    }
+
+    Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name)
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new Histogram())
+            histogram = histograms.get(name)
+        }
+        return histogram
+    }
+
+    /**
+     * registers a gauge, {@code value} is called every time the metrics are read
+     */
+    void gauge(String name, Closure<Number> value) {
+        gauges.put(name, value)
+    }
+
+    RouteMetrics route(String method, String route) {
+        String key = method + " " + route
+        RouteMetrics metrics = routes.get(key)
+        if (metrics == null) {
+            routes.putIfAbsent(key, new RouteMetrics(method, route))
+            metrics = routes.get(key)
+        }
+        return metrics
+    }
+
+    Map<String, LongAdder> getCounters() {
+        return new TreeMap<String, LongAdder>(counters)
+    }
+
+    Map<String, Closure<Number>> getGauges() {
+        return new TreeMap<String, Closure<Number>>(gauges)
+    }
+
+    Map<String, Histogram> getHistograms() {
+        return new TreeMap<String, Histogram>(histograms)
+    }
+
+    Map<String, RouteMetrics> getRoutes() {
+        return new TreeMap<String, RouteMetrics>(routes)
+    }
+
+    /**
+     * @return current value of every metric, histograms as maps (see {@link Histogram#toMap()})
+     */
+    Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<String, Object>()
+        counters.each { String name, LongAdder counter -> snapshot[name] = counter.sum() }
+        gauges.each { String name, Closure<Number> gauge -> snapshot[name] = gauge.call() }
+        histograms.each { String name, Histogram histogram -> snapshot[name] = histogram.toMap() }
+        return snapshot
+    }
+}
@@ -0,0 +1,73 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Writes the metrics of a {@link MetricsRegistry} in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Counters and gauges are exported as they are, histograms as summaries with the usual quantiles
+ * and route metrics as a request counter by status plus a latency histogram in seconds.
+ */
+@CompileStatic
+class PrometheusFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4"
+
+    private static final String PREFIX = "gameregistry_"
+    private static final double[] QUANTILES = [0.5d, 0.9d, 0.99d, 0.999d] as double[]
+    // upper bounds of the latency buckets in microseconds
+    private static final long[] LATENCY_BUCKETS = [1000L, 2000L, 5000L, 10000L, 20000L, 50000L, 100000L, 200000L,
+                                                   500000L, 1000000L, 2000000L, 5000000L] as long[]
+
+    static String format(MetricsRegistry metrics) {
+        StringBuilder out = new StringBuilder()
+
+        metrics.counters.each { String name, LongAdder counter ->
+            out << "# TYPE " << PREFIX << name << " counter\n"
+            out << PREFIX << name << " " << counter.sum() << "\n"
+        }
+        metrics.gauges.each { String name, Closure<Number> gauge ->
+            out << "# TYPE " << PREFIX << name << " gauge\n"
+            out << PREFIX << name << " " << gauge.call() << "\n"
+        }
+        metrics.histograms.each { String name, Histogram histogram ->
+            out << "# TYPE " << PREFIX << name << " summary\n"
+            for (double quantile : QUANTILES)
+                out << PREFIX << name << "{quantile=\"" << quantile << "\"} " << histogram.valueAt(quantile) << "\n"
+            out << PREFIX << name << "_sum " << histogram.sum << "\n"
+            out << PREFIX << name << "_count " << histogram.count << "\n"
+        }
+
+        Collection<RouteMetrics> routes = metrics.routes.values()
+        out << "# TYPE " << PREFIX << "http_requests_total counter\n"
+        for (RouteMetrics route : routes) {
+            route.eachStatus { int status, long count ->
+                out << PREFIX << "http_requests_total{" << labels(route) << ",status=\"" << status << "\"} " << count << "\n"
+            }
+        }
+        out << "# TYPE " << PREFIX << "http_request_duration_seconds histogram\n"
+        for (RouteMetrics route : routes) {
+            Histogram latency = route.latency
+            String name = PREFIX + "http_request_duration_seconds"
+            for (long bucket : LATENCY_BUCKETS) {
+                out << name << "_bucket{" << labels(route) << ",le=\"" << (bucket / 1000000.0d) << "\"} " <<
+                        latency.countAtOrBelow(bucket) << "\n"
+            }
+            out << name << "_bucket{" << labels(route) << ",le=\"+Inf\"} " << latency.count << "\n"
+            out << name << "_sum{" << labels(route) << "} " << (latency.sum / 1000000.0d) << "\n"
+            out << name << "_count{" << labels(route) << "} " << latency.count << "\n"
+        }
+
+        return out.toString()
+    }
+
+    private static String labels(RouteMetrics route) {
+        return "method=\"" + escape(route.method) + "\",route=\"" + escape(route.route) + "\""
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")
+    }
+}
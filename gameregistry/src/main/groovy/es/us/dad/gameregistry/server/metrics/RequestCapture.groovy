@@ -0,0 +1,112 @@
+package es.us.dad.gameregistry.server.metrics
+
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.buffer.Buffer
+import org.vertx.groovy.core.file.AsyncFile
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Writes the API requests of a server to a binary capture file (see {@link CapturedRequest}), to
+ * replay production traffic against a test instance.
+ *
+ * Records are buffered and appended to the file asynchronously, at least every second. Once
+ * {@code maxBytes} have been captured, or while the file can't keep up, further requests are
+ * only counted in {@code requests_capture_dropped}. User tokens aren't captured.
+ */
+class RequestCapture {
+
+    private static final int FLUSH_SIZE = 64 * 1024
+    private static final long FLUSH_INTERVAL = 1000 // milliseconds
+    // several instances of the rest server in one JVM write to their own files
+    private static final AtomicInteger INSTANCES = new AtomicInteger()
+
+    private final Vertx vertx
+    private final Logger logger
+    private final String path
+    private final long maxBytes
+    private final LongAdder captured
+    private final LongAdder dropped
+
+    private AsyncFile file
+    private Buffer pending = new Buffer()
+    private long size = 0
+    private long timer = -1
+
+    /**
+     * @param path capture file, replaced if it exists; the n-th instance in the same JVM appends ".n"
+     * @param maxBytes size of the capture after which requests aren't captured anymore
+     */
+    public RequestCapture(Vertx vertx, Logger logger, MetricsRegistry metrics, String path, long maxBytes) {
+        int instance = INSTANCES.incrementAndGet()
+        this.vertx = vertx
+        this.logger = logger
+        this.path = instance == 1 ? path : path + "." + instance
+        this.maxBytes = maxBytes
+        this.captured = metrics.counter("requests_captured")
+        this.dropped = metrics.counter("requests_capture_dropped")
+    }
+
+    public String getPath() {
+        return path
+    }
+
+    /**
+     * opens the capture file, requests captured before it is open are buffered
+     */
+    public void start() {
+        ByteArrayOutputStream header = new ByteArrayOutputStream()
+        CapturedRequest.writeHeader(new DataOutputStream(header))
+        pending.appendBytes(header.toByteArray())
+        size = pending.length
+
+        vertx.fileSystem.delete(path) {
+            vertx.fileSystem.open(path, null, false, true, true) { asyncResult ->
+                if (asyncResult.failed) {
+                    logger.error("Could not open the request capture ${path}: ${asyncResult.cause.message}")
+                    return
+                }
+
+                file = asyncResult.result as AsyncFile
+                logger.info("Capturing requests to ${path}")
+                flush()
+                timer = vertx.setPeriodic(FLUSH_INTERVAL, { flush() })
+            }
+        }
+    }
+
+    public void stop() {
+        if (timer != -1)
+            vertx.cancelTimer(timer)
+        timer = -1
+        flush()
+        file?.close()
+        file = null
+    }
+
+    public void record(CapturedRequest request) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + request.body.length)
+        request.write(new DataOutputStream(bytes))
+
+        if (size + bytes.size() > maxBytes || (file != null && file.writeQueueFull) || pending.length > 16 * FLUSH_SIZE) {
+            dropped.increment()
+            return
+        }
+
+        pending.appendBytes(bytes.toByteArray())
+        size += bytes.size()
+        captured.increment()
+        if (file != null && pending.length >= FLUSH_SIZE)
+            flush()
+    }
+
+    private void flush() {
+        if (file == null || pending.length == 0)
+            return
+
+        file.write(pending)
+        pending = new Buffer()
+    }
+}
@@ -0,0 +1,80 @@
+package es.us.dad.gameregistry.server.metrics
+
+import es.us.dad.gameregistry.shared.GameRegistryConstants
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.http.HttpServerRequest
+import org.vertx.groovy.core.http.impl.DefaultHttpServerRequest
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Wraps the requests of the registered routes so their responses are recorded in the route
+ * metrics, and attaches a {@link ServerTiming} to the requests whose phases are timed: all of
+ * them if the {@code Server-Timing} header is enabled, otherwise a sample which is only logged.
+ * With a {@link RequestCapture}, the requests of the API routes are captured once they were answered.
+ *
+ * The GET requests of the warm-up carry {@link #getWarmUpKey} in the {@link #WARM_UP_HEADER} header:
+ * they aren't recorded nor captured, and are marked so the controllers don't authenticate nor rate
+ * limit them.
+ */
+@CompileStatic
+class RequestTracker {
+
+    public static final String WARM_UP_HEADER = "gameregistry-warmup"
+
+    // random, only known to the warm-up of this server
+    private final String warmUpKey = UUID.randomUUID().toString()
+    private final MetricsRegistry metrics
+    private final Logger logger
+    private final boolean serverTiming
+    private final double logSampleRate
+    private final RequestCapture capture
+
+    public RequestTracker(MetricsRegistry metrics, Logger logger) {
+        this(metrics, logger, false, 0)
+    }
+
+    /**
+     * @param serverTiming send the {@code Server-Timing} header with every response
+     * @param logSampleRate fraction of the requests whose timings are logged (0 to 1)
+     */
+    public RequestTracker(MetricsRegistry metrics, Logger logger, boolean serverTiming, double logSampleRate) {
+        this(metrics, logger, serverTiming, logSampleRate, null)
+    }
+
+    /**
+     * @param capture captures the API requests, or {@code null}
+     */
+    public RequestTracker(MetricsRegistry metrics, Logger logger, boolean serverTiming, double logSampleRate,
+                          RequestCapture capture) {
+        this.metrics = metrics
+        this.logger = logger
+        this.serverTiming = serverTiming
+        this.logSampleRate = logSampleRate
+        this.capture = capture
+    }
+
+    public RouteMetrics route(String method, String route) {
+        return metrics.route(method, route)
+    }
+
+    public String getWarmUpKey() {
+        return warmUpKey
+    }
+
+    public HttpServerRequest track(HttpServerRequest request, RouteMetrics routeMetrics) {
+        if (request.method == "GET" && warmUpKey == request.headers.get(WARM_UP_HEADER))
+            return new TrackedRequest(((DefaultHttpServerRequest) request).toJavaRequest(), null, null, logger, null,
+                                      null, true)
+
+        boolean logged = logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate
+        ServerTiming timing = serverTiming || logged ? new ServerTiming(serverTiming, logged) : null
+        CapturedRequest captured = null
+        if (capture != null && routeMetrics.route.startsWith("/api/"))
+            captured = new CapturedRequest(System.currentTimeMillis(), routeMetrics.method, routeMetrics.route, request.uri,
+                                           request.headers.get(GameRegistryConstants.GAMEREGISTRY_USER_HEADER))
+        return new TrackedRequest(((DefaultHttpServerRequest) request).toJavaRequest(), routeMetrics, timing, logger,
+                                  capture, captured, false)
+    }
+}
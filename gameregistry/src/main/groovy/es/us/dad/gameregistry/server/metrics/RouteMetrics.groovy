@@ -0,0 +1,44 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Request counters by status code and the latency histogram (microseconds) of one route.
+ *
+ * Looked up once when the route is registered; recording a request only increments
+ * atomic counters.
+ */
+@CompileStatic
+class RouteMetrics {
+
+    private static final int MAX_STATUS = 600
+
+    final String method
+    final String route
+    final Histogram latency = new Histogram()
+    private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS)
+
+    RouteMetrics(String method, String route) {
+        this.method = method
+        this.route = route
+    }
+
+    void record(int status, long micros) {
+        statusCounts.incrementAndGet(status >= 0 && status < MAX_STATUS ? status : 0)
+        latency.record(micros)
+    }
+
+    /**
+     * Calls {@code visitor} with the status code and the number of requests of every status
+     * which was answered at least once.
+     */
+    void eachStatus(Closure visitor) {
+        for (int status = 0; status < MAX_STATUS; status++) {
+            long count = statusCounts.get(status)
+            if (count != 0)
+                visitor.call(status, count)
+        }
+    }
+}
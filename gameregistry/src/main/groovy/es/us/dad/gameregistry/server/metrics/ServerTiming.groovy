@@ -0,0 +1,50 @@
+package es.us.dad.gameregistry.server.metrics
+
+import es.us.dad.gameregistry.shared.GameRegistryConstants
+import groovy.transform.CompileStatic
+
+/**
+ * Durations of the phases of one request (authentication, body parsing, repository calls, ...),
+ * written as a {@code Server-Timing} header like {@code auth;dur=0.42, db_find;dur=3.10, total;dur=4.05}.
+ * A phase may appear several times. Only used from the event loop of the request.
+ */
+@CompileStatic
+class ServerTiming {
+
+    public static final String HEADER = GameRegistryConstants.SERVER_TIMING_HEADER
+
+    final boolean emitHeader
+    final boolean logged
+    private final long started = System.nanoTime()
+    private final List<String> names = new ArrayList<String>(8)
+    private final List<Long> durations = new ArrayList<Long>(8)
+
+    /**
+     * @param emitHeader the timings are sent to the client
+     * @param logged the timings are logged
+     */
+    ServerTiming(boolean emitHeader, boolean logged) {
+        this.emitHeader = emitHeader
+        this.logged = logged
+    }
+
+    /**
+     * adds a phase which started at {@code startedNanos} (see {@link System#nanoTime()}) and ends now
+     */
+    void add(String name, long startedNanos) {
+        names.add(name)
+        durations.add(System.nanoTime() - startedNanos)
+    }
+
+    String toHeader() {
+        StringBuilder header = new StringBuilder()
+        for (int i = 0; i < names.size(); i++)
+            header << names[i] << ";dur=" << millis(durations[i]) << ", "
+        header << "total;dur=" << millis(System.nanoTime() - started)
+        return header.toString()
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1000000.0d)
+    }
+}
@@ -0,0 +1,45 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.http.HttpServerResponse
+import org.vertx.groovy.core.http.impl.DefaultHttpServerRequest
+import org.vertx.java.core.http.HttpServerRequest as JavaHttpServerRequest
+import org.vertx.java.core.logging.Logger
+
+/**
+ * Request whose response records its status and latency in the {@link RouteMetrics} of the route
+ * once it is ended.
+ *
+ * Vert.x 2 only lets a route see its response through the request, so every tracked request still
+ * allocates this wrapper and its response; recording the route metrics allocates nothing else.
+ */
+@CompileStatic
+class TrackedRequest extends DefaultHttpServerRequest {
+
+    private final TrackedResponse response
+    final ServerTiming timing
+    final CapturedRequest captured
+    final boolean warmUp
+
+    /**
+     * @param metrics metrics of the route, or {@code null} if the request isn't recorded
+     * @param timing phase timings of the request, or {@code null} if they aren't recorded
+     * @param captured record of the request which is passed to {@code capture} once the response
+     *                 ended, or {@code null} if the request isn't captured
+     * @param warmUp request of the warm-up, which isn't authenticated
+     */
+    TrackedRequest(JavaHttpServerRequest request, RouteMetrics metrics, ServerTiming timing, Logger logger,
+                   RequestCapture capture, CapturedRequest captured, boolean warmUp) {
+        super(request)
+        this.timing = timing
+        this.captured = captured
+        this.warmUp = warmUp
+        this.response = new TrackedResponse(request.response(), metrics, System.nanoTime(), timing, logger,
+                                            capture, captured)
+    }
+
+    @Override
+    HttpServerResponse getResponse() {
+        return response
+    }
+}
@@ -0,0 +1,92 @@
+package es.us.dad.gameregistry.server.metrics
+
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.buffer.Buffer
+import org.vertx.groovy.core.http.HttpServerResponse
+import org.vertx.groovy.core.http.impl.DefaultHttpServerResponse
+import org.vertx.java.core.http.HttpServerResponse as JavaHttpServerResponse
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * @see TrackedRequest
+ */
+@CompileStatic
+class TrackedResponse extends DefaultHttpServerResponse {
+
+    private final RouteMetrics metrics
+    private final long started
+    private final ServerTiming timing
+    private final Logger logger
+    private final RequestCapture capture
+    private final CapturedRequest captured
+    private boolean recorded = false
+
+    TrackedResponse(JavaHttpServerResponse response, RouteMetrics metrics, long started,
+                    ServerTiming timing, Logger logger, RequestCapture capture, CapturedRequest captured) {
+        super(response)
+        this.metrics = metrics
+        this.started = started
+        this.timing = timing
+        this.logger = logger
+        this.capture = capture
+        this.captured = captured
+    }
+
+    private void record() {
+        if (recorded)
+            return
+        recorded = true
+        if (metrics != null)
+            // intdiv and / (a decimal division) would box the long
+            metrics.record(statusCode, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started))
+
+        if (timing != null) {
+            String header = timing.toHeader()
+            if (timing.emitHeader)
+                putHeader(ServerTiming.HEADER, header)
+            if (timing.logged)
+                logger.info("${ServerTiming.HEADER} of ${metrics.method} ${metrics.route} (${statusCode}): ${header}")
+        }
+
+        if (captured != null)
+            capture.record(captured)
+    }
+
+    @Override
+    void end(String chunk) {
+        record()
+        super.end(chunk)
+    }
+
+    @Override
+    void end(String chunk, String enc) {
+        record()
+        super.end(chunk, enc)
+    }
+
+    @Override
+    void end(Buffer chunk) {
+        record()
+        super.end(chunk)
+    }
+
+    @Override
+    void end() {
+        record()
+        super.end()
+    }
+
+    @Override
+    HttpServerResponse sendFile(String filename) {
+        record()
+        return super.sendFile(filename)
+    }
+
+    @Override
+    HttpServerResponse sendFile(String filename, String notFoundFile) {
+        record()
+        return super.sendFile(filename, notFoundFile)
+    }
+}
@@ -0,0 +1,135 @@
+package es.us.dad.gameregistry.server.repository
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.DatabaseException
+import es.us.dad.gameregistry.server.exception.ServiceUnavailableException
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.shared.domain.GameSession
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Bounds the calls in flight to another repository with an adaptive limit (see {@link VegasLimit}).
+ *
+ * Calls over the limit fail right away with a {@link ServiceUnavailableException} instead of
+ * queueing up behind a slow database. Reads may only use {@code readShare} of the limit, so they
+ * are shed before writes. The current limit, the calls in flight and the shed calls are exposed as
+ * {@code repository_limit}, {@code repository_in_flight}, {@code repository_shed_reads} and
+ * {@code repository_shed_writes}. Only used from the event loop of the rest server.
+ */
+class AdmissionControlledRepository implements ISessionRepository {
+
+    private final ISessionRepository repository
+    private final VegasLimit limit
+    private final double readShare
+    private final long retryAfter
+    private int inFlight = 0
+
+    private final Histogram rtts
+    private final LongAdder shedReads
+    private final LongAdder shedWrites
+
+    /**
+     * @param readShare fraction of the limit reads may use (0 to 1)
+     * @param retryAfter seconds after which shed clients should retry
+     */
+    public AdmissionControlledRepository(ISessionRepository repository, VegasLimit limit, MetricsRegistry metrics,
+                                         double readShare, long retryAfter) {
+        this.repository = repository
+        this.limit = limit
+        this.readShare = readShare
+        this.retryAfter = retryAfter
+
+        this.rtts = metrics.histogram("repository_rtt_us")
+        this.shedReads = metrics.counter("repository_shed_reads")
+        this.shedWrites = metrics.counter("repository_shed_writes")
+        metrics.gauge("repository_limit", { limit.limit })
+        metrics.gauge("repository_in_flight", { inFlight })
+    }
+
+    private <T> Promise<T> admit(boolean read, Closure<Promise<T>> call) {
+        Promise<T> p = new Promise<T>()
+
+        int allowed = read ? (int) (limit.limit * readShare) : limit.limit
+        if (inFlight >= Math.max(1, allowed)) {
+            (read ? shedReads : shedWrites).increment()
+            p.reject(new ServiceUnavailableException("The registry is overloaded, please retry later.", retryAfter))
+            return p
+        }
+
+        int startedInFlight = ++inFlight
+        long started = System.nanoTime()
+        call.call().then({ T result ->
+            complete(started, startedInFlight, false)
+            p.fulfill(result)
+        }).fail({ Exception ex ->
+            complete(started, startedInFlight, ex instanceof DatabaseException)
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    private void complete(long started, int startedInFlight, boolean dropped) {
+        inFlight--
+        long rtt = (System.nanoTime() - started).intdiv(1000) as long
+        rtts.record(rtt)
+        limit.onSample(rtt, startedInFlight, dropped)
+    }
+
+    @Override
+    Promise<GameSession> create(GameSession session) {
+        return admit(false) { repository.create(session) }
+    }
+
+    @Override
+    Promise<GameSession> update(GameSession session) {
+        return admit(false) { repository.update(session) }
+    }
+
+    @Override
+    Promise<Void> delete(UUID id) {
+        return admit(false) { repository.delete(id) }
+    }
+
+    @Override
+    Promise<Void> delete(UUID id, String user) {
+        return admit(false) { repository.delete(id, user) }
+    }
+
+    @Override
+    Promise<GameSession> findById(UUID id) {
+        return admit(true) { repository.findById(id) }
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user) {
+        return admit(true) { repository.find(id, user) }
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields) {
+        return admit(true) { repository.find(id, user, fields) }
+    }
+
+    @Override
+    Promise<Void> cleanup(long maxAge) {
+        return admit(false) { repository.cleanup(maxAge) }
+    }
+
+    @Override
+    Promise<List<GameSession>> findOpen() {
+        return admit(true) { repository.findOpen() }
+    }
+
+    @Override
+    Promise<Integer> expire(List<UUID> ids, long maxAge) {
+        return admit(false) { repository.expire(ids, maxAge) }
+    }
+
+    @Override
+    Promise<List<UUID>> findExpired(long maxAge, int limit) {
+        return admit(true) { repository.findExpired(maxAge, limit) }
+    }
+}
@@ -0,0 +1,243 @@
+package es.us.dad.gameregistry.server.repository
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.DatabaseException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.eventbus.Message
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Degrades another repository on purpose, to test timeouts, load shedding and the caches against
+ * a slow or failing database without breaking a real one.
+ *
+ * Faults are configured by operation ({@code create}, {@code update}, {@code find} and
+ * {@code delete}, or {@code *} for the operations without an own entry):
+ *
+ * <pre><code>
+ *  {"find": {"latency": 20, "distribution": "exponential", "error_rate": 0.01,
+ *            "stall_rate": 0.001, "stall_time": 5000}}
+ * </code></pre>
+ *
+ * Calls are delayed by a latency in milliseconds drawn from the distribution ({@code fixed},
+ * {@code uniform} between 0 and twice the latency or {@code exponential} with it as mean), a
+ * share of them additionally stalls for {@code stall_time} milliseconds, and a share fails with a
+ * {@link DatabaseException} instead of reaching the repository. A configuration published on
+ * {@link #ADDRESS} replaces the one of every node. Only used from the event loop of the rest server.
+ */
+class FaultInjectingRepository implements ISessionRepository {
+
+    public static final String ADDRESS = "gameregistry.faults"
+    public static final List<String> OPERATIONS = ["create", "update", "find", "delete", "*"]
+
+    static class Fault {
+        final long latency
+        final String distribution
+        final double errorRate
+        final double stallRate
+        final long stallTime
+
+        Fault(long latency, String distribution, double errorRate, double stallRate, long stallTime) {
+            this.latency = latency
+            this.distribution = distribution
+            this.errorRate = errorRate
+            this.stallRate = stallRate
+            this.stallTime = stallTime
+        }
+
+        /**
+         * @throws IllegalArgumentException if a value is out of range
+         */
+        static Fault fromMap(Map map) {
+            long latency = (map["latency"] ?: 0) as long
+            String distribution = map["distribution"] ?: "fixed"
+            double errorRate = (map["error_rate"] ?: 0) as double
+            double stallRate = (map["stall_rate"] ?: 0) as double
+            long stallTime = (map["stall_time"] ?: 0) as long
+
+            if (latency < 0 || stallTime < 0)
+                throw new IllegalArgumentException("Latencies must not be negative.")
+            if (!(distribution in ["fixed", "uniform", "exponential"]))
+                throw new IllegalArgumentException("Unknown latency distribution ${distribution}.")
+            if (errorRate < 0 || errorRate > 1 || stallRate < 0 || stallRate > 1)
+                throw new IllegalArgumentException("Rates must be between 0 and 1.")
+            return new Fault(latency, distribution, errorRate, stallRate, stallTime)
+        }
+
+        Map<String, Object> toMap() {
+            return [latency   : latency, distribution: distribution, error_rate: errorRate,
+                    stall_rate: stallRate, stall_time: stallTime]
+        }
+
+        long nextLatency(Random random) {
+            switch (distribution) {
+                case "uniform":
+                    return (long) (random.nextDouble() * 2 * latency)
+                case "exponential":
+                    return (long) (-Math.log(1 - random.nextDouble()) * latency)
+                default:
+                    return latency
+            }
+        }
+    }
+
+    private final Vertx vertx
+    private final Logger logger
+    private final ISessionRepository repository
+    private Map<String, Fault> faults = [:]
+
+    private final LongAdder injectedErrors
+    private final LongAdder injectedStalls
+
+    public FaultInjectingRepository(Vertx vertx, Logger logger, ISessionRepository repository, MetricsRegistry metrics) {
+        this.vertx = vertx
+        this.logger = logger
+        this.repository = repository
+
+        this.injectedErrors = metrics.counter("repository_injected_errors")
+        this.injectedStalls = metrics.counter("repository_injected_stalls")
+    }
+
+    /**
+     * starts applying the configurations published on {@link #ADDRESS}
+     */
+    public void start() {
+        vertx.eventBus.registerHandler(ADDRESS) { Message message ->
+            configure(message.body as Map)
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    static Map<String, Fault> parse(Map config) {
+        Map<String, Fault> faults = [:]
+        config.each { String operation, Object fault ->
+            if (!(operation in OPERATIONS))
+                throw new IllegalArgumentException("Unknown operation ${operation}.")
+            if (!(fault instanceof Map))
+                throw new IllegalArgumentException("The faults of ${operation} must be an object.")
+            faults[operation] = Fault.fromMap(fault as Map)
+        }
+        return faults
+    }
+
+    /**
+     * replaces the faults of this node, an empty configuration removes them
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public void configure(Map config) {
+        faults = parse(config)
+        if (faults.isEmpty())
+            logger.info("Fault injection cleared.")
+        else
+            logger.warn("Injecting faults into the session repository: ${config}")
+    }
+
+    /**
+     * replaces the faults of every node
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public void publish(Map config) {
+        parse(config)
+        vertx.eventBus.publish(ADDRESS, config)
+    }
+
+    public Map<String, Map> getConfig() {
+        return faults.collectEntries { String operation, Fault fault -> [operation, fault.toMap()] } as Map<String, Map>
+    }
+
+    private <T> Promise<T> inject(String operation, Closure<Promise<T>> call) {
+        Fault fault = faults[operation] ?: faults["*"]
+        if (fault == null)
+            return call.call()
+
+        Promise<T> p = new Promise<T>()
+        Random random = ThreadLocalRandom.current()
+        long delay = fault.nextLatency(random)
+        if (fault.stallRate > 0 && random.nextDouble() < fault.stallRate) {
+            injectedStalls.increment()
+            delay += fault.stallTime
+        }
+        boolean fail = fault.errorRate > 0 && random.nextDouble() < fault.errorRate
+
+        Closure proceed = {
+            if (fail) {
+                injectedErrors.increment()
+                p.reject(new DatabaseException("Injected ${operation} failure."))
+                return
+            }
+            call.call().then({ T result ->
+                p.fulfill(result)
+            }).fail({ Exception ex ->
+                p.reject(ex)
+            })
+        }
+
+        if (delay > 0)
+            vertx.setTimer(delay, { proceed() })
+        else
+            proceed()
+
+        return p
+    }
+
+    @Override
+    Promise<GameSession> create(GameSession session) {
+        return inject("create") { repository.create(session) }
+    }
+
+    @Override
+    Promise<GameSession> update(GameSession session) {
+        return inject("update") { repository.update(session) }
+    }
+
+    @Override
+    Promise<Void> delete(UUID id) {
+        return inject("delete") { repository.delete(id) }
+    }
+
+    @Override
+    Promise<Void> delete(UUID id, String user) {
+        return inject("delete") { repository.delete(id, user) }
+    }
+
+    @Override
+    Promise<GameSession> findById(UUID id) {
+        return inject("find") { repository.findById(id) }
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user) {
+        return inject("find") { repository.find(id, user) }
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields) {
+        return inject("find") { repository.find(id, user, fields) }
+    }
+
+    @Override
+    Promise<Void> cleanup(long maxAge) {
+        return inject("delete") { repository.cleanup(maxAge) }
+    }
+
+    @Override
+    Promise<List<GameSession>> findOpen() {
+        return inject("find") { repository.findOpen() }
+    }
+
+    @Override
+    Promise<Integer> expire(List<UUID> ids, long maxAge) {
+        return inject("update") { repository.expire(ids, maxAge) }
+    }
+
+    @Override
+    Promise<List<UUID>> findExpired(long maxAge, int limit) {
+        return inject("find") { repository.findExpired(maxAge, limit) }
+    }
+}
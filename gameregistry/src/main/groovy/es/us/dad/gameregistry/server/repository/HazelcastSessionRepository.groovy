@@ -0,0 +1,236 @@
+package es.us.dad.gameregistry.server.repository
+
+import com.darylteo.vertx.promises.groovy.Promise
+import com.hazelcast.config.Config
+import com.hazelcast.core.ExecutionCallback
+import com.hazelcast.core.Hazelcast
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.core.ICompletableFuture
+import com.hazelcast.core.IMap
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.Context
+import org.vertx.java.core.Handler
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps open (unfinished) sessions in a distributed Hazelcast map shared by all registry nodes.
+ *
+ * Starting, getting and finishing a session only waits for the map; open sessions are written
+ * to the backing store asynchronously. Finished sessions are written through to the backing
+ * store and then evicted from the map. Deleted sessions leave a short-lived tombstone behind,
+ * so a pending asynchronous write can't bring them back.
+ *
+ * Entries of open sessions expire after {@code ttl} seconds, like the sessions removed by the
+ * cleanup of the backing store.
+ */
+class HazelcastSessionRepository implements ISessionRepository {
+
+    public static final String MAP_NAME = "gameregistry.open_sessions"
+
+    // a deleted session is remembered this long (seconds)
+    private static final long TOMBSTONE_TTL = 60
+    private static final Map<String, Object> TOMBSTONE = Collections.unmodifiableMap([deleted: true])
+
+    private final Vertx vertx
+    private final Logger logger
+    private final ISessionRepository store
+    private final IMap<String, Map<String, Object>> openSessions
+    private final long ttl
+
+    /**
+     * @param hazelcast Hazelcast instance holding the shared map
+     * @param store repository sessions are persisted to (ie MongoSessionRepository)
+     * @param ttl seconds an open session is kept in the map
+     */
+    public HazelcastSessionRepository(Vertx vertx, Logger logger, HazelcastInstance hazelcast,
+                                      ISessionRepository store, long ttl) {
+        this.vertx = vertx
+        this.logger = logger
+        this.store = store
+        this.openSessions = hazelcast.getMap(MAP_NAME)
+        this.ttl = ttl
+    }
+
+    /**
+     * Returns the Hazelcast instance of the vert.x cluster or, if vert.x doesn't run clustered,
+     * a single-node embedded instance which doesn't join other members.
+     */
+    public static HazelcastInstance clusterOrEmbeddedInstance() {
+        Set<HazelcastInstance> instances = Hazelcast.getAllHazelcastInstances()
+        if (!instances.isEmpty())
+            return instances.iterator().next()
+
+        Config config = new Config()
+        config.setInstanceName("gameregistry")
+        config.networkConfig.join.multicastConfig.enabled = false
+        config.networkConfig.join.tcpIpConfig.enabled = false
+        return Hazelcast.getOrCreateHazelcastInstance(config)
+    }
+
+    /**
+     * Wraps a Hazelcast future into a Promise which is completed on the calling vert.x context.
+     */
+    private <T> Promise<T> onContext(Future<T> future) {
+        Promise<T> p = new Promise<T>()
+        Context context = vertx.toJavaVertx().currentContext()
+
+        ((ICompletableFuture) future).andThen(new ExecutionCallback() {
+            @Override
+            void onResponse(Object response) {
+                context.runOnContext({ p.fulfill(response) } as Handler<Void>)
+            }
+
+            @Override
+            void onFailure(Throwable t) {
+                context.runOnContext({ p.reject(t) } as Handler<Void>)
+            }
+        })
+
+        return p
+    }
+
+    private void persist(GameSession session) {
+        String key = session.id.toString()
+
+        store.create(session).then({
+            // the session was deleted while it was being written: delete it from the store too
+            return onContext(openSessions.getAsync(key))
+        }).then({ Map<String, Object> json ->
+            if (json != null && json["deleted"])
+                return store.delete(session.id, session.user)
+            return null
+        }).fail({ Exception ex ->
+            logger.error("Could not persist GameSession ${key}: ${ex.message}")
+        })
+    }
+
+    @Override
+    Promise<GameSession> create(GameSession session) {
+        Promise<GameSession> p = new Promise<GameSession>()
+
+        onContext(openSessions.putAsync(session.id.toString(), session.toJsonMap(), ttl, TimeUnit.SECONDS)).then({
+            p.fulfill(session)
+            persist(session)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    @Override
+    Promise<GameSession> update(GameSession session) {
+        if (!session.finished) {
+            // still open: update the hot copy, persist it in the background
+            Promise<GameSession> p = new Promise<GameSession>()
+
+            onContext(openSessions.putAsync(session.id.toString(), session.toJsonMap(), ttl, TimeUnit.SECONDS)).then({
+                p.fulfill(session)
+                store.update(session).fail({ Exception ex ->
+                    logger.error("Could not persist GameSession ${session.id}: ${ex.message}")
+                })
+            }).fail({ Exception ex ->
+                p.reject(ex)
+            })
+
+            return p
+        }
+
+        // finished: write through, then evict
+        Promise<GameSession> p = new Promise<GameSession>()
+
+        store.update(session).then({
+            return onContext(openSessions.removeAsync(session.id.toString()))
+        }).then({
+            p.fulfill(session)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    @Override
+    Promise<Void> delete(UUID id) {
+        return delete(id, null)
+    }
+
+    @Override
+    Promise<Void> delete(UUID id, String user) {
+        Promise<Void> p = new Promise<Void>()
+
+        onContext(openSessions.putAsync(id.toString(), TOMBSTONE, TOMBSTONE_TTL, TimeUnit.SECONDS)).then({ Map<String, Object> previous ->
+            return store.delete(id, user).fail({ Exception ex ->
+                // an open session which hasn't been written to the store yet
+                if (ex instanceof ObjectNotFoundException && previous != null && !previous["deleted"])
+                    return null
+                throw ex
+            })
+        }).then({
+            p.fulfill(null)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    @Override
+    Promise<GameSession> findById(UUID id) {
+        Promise<GameSession> p = new Promise<GameSession>()
+
+        onContext(openSessions.getAsync(id.toString())).then({ Map<String, Object> json ->
+            if (json == null)
+                return store.findById(id)
+            if (json["deleted"])
+                throw new ObjectNotFoundException("GameSession not found.")
+            return new GameSession(json)
+        }).then({ GameSession session ->
+            p.fulfill(session)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user) {
+        return find(id, user, null)
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields) {
+        // open sessions are written to the store a few milliseconds after they were started,
+        // finished and deleted sessions are written through.
+        return store.find(id, user, fields)
+    }
+
+    @Override
+    Promise<Void> cleanup(long maxAge) {
+        // entries of open sessions expire on their own after ttl seconds
+        return store.cleanup(maxAge)
+    }
+
+    @Override
+    Promise<List<GameSession>> findOpen() {
+        return store.findOpen()
+    }
+
+    @Override
+    Promise<Integer> expire(List<UUID> ids, long maxAge) {
+        // hot entries expire on their own, but an expired session shouldn't be served until then
+        ids.each { UUID id -> openSessions.removeAsync(id.toString()) }
+        return store.expire(ids, maxAge)
+    }
+
+    @Override
+    Promise<List<UUID>> findExpired(long maxAge, int limit) {
+        return store.findExpired(maxAge, limit)
+    }
+}
@@ -8,8 +8,20 @@ interface ISessionRepository {
     Promise<GameSession> create(GameSession session)
     Promise<GameSession> update(GameSession session)
     Promise<Void> delete(UUID id)
+    /**
+     * @param user user of the session, or {@code null} if unknown
+     */
+    Promise<Void> delete(UUID id, String user)
     Promise<GameSession> findById(UUID id)
     Promise<List<GameSession>> find(UUID id, String user)
+    /**
+     * @param fields fields of the sessions to read (see {@link GameSession#FIELDS}), or {@code null}
+     *               for all of them; the others may be left unset
+     */
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields)
     Promise<Void> cleanup(long maxAge)
+    Promise<List<GameSession>> findOpen()
+    Promise<Integer> expire(List<UUID> ids, long maxAge)
+    Promise<List<UUID>> findExpired(long maxAge, int limit)
 
 }
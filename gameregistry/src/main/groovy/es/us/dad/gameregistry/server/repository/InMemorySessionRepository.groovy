@@ -0,0 +1,155 @@
+package es.us.dad.gameregistry.server.repository
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.shared.domain.GameSession
+import groovy.transform.CompileStatic
+
+/**
+ * Keeps the sessions of a single node in memory, for benchmarks and load tests which shouldn't
+ * measure the database.
+ *
+ * Sessions are stored as their JSON maps and every read builds new GameSession objects, like the
+ * mongo-persistor does. The promises are completed right away, on the calling thread.
+ */
+@CompileStatic
+class InMemorySessionRepository implements ISessionRepository {
+
+    private final Map<UUID, Map<String, Object>> sessions = new LinkedHashMap<UUID, Map<String, Object>>()
+
+    private static <T> Promise<T> fulfilled(T value) {
+        Promise<T> p = new Promise<T>()
+        p.fulfill(value)
+        return p
+    }
+
+    private static <T> Promise<T> notFound() {
+        Promise<T> p = new Promise<T>()
+        p.reject(new ObjectNotFoundException("GameSession not found."))
+        return p
+    }
+
+    private static boolean isExpired(Map<String, Object> json, long minAge) {
+        return json["end"] == null && (json["start"] as long) < minAge
+    }
+
+    public int size() {
+        return sessions.size()
+    }
+
+    @Override
+    Promise<GameSession> create(GameSession session) {
+        // like the upsert with $setOnInsert, creating an existing session is a no-op
+        if (!sessions.containsKey(session.id))
+            sessions.put(session.id, session.toJsonMap())
+        return fulfilled(session)
+    }
+
+    @Override
+    Promise<GameSession> update(GameSession session) {
+        sessions.put(session.id, session.toJsonMap())
+        return fulfilled(session)
+    }
+
+    @Override
+    Promise<Void> delete(UUID id) {
+        return delete(id, null)
+    }
+
+    @Override
+    Promise<Void> delete(UUID id, String user) {
+        if (sessions.remove(id) == null)
+            return notFound()
+        return fulfilled((Void) null)
+    }
+
+    @Override
+    Promise<GameSession> findById(UUID id) {
+        Map<String, Object> json = sessions.get(id)
+        if (json == null)
+            return notFound()
+        return fulfilled(new GameSession(json))
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user) {
+        return find(id, user, null)
+    }
+
+    /**
+     * like a mongo projection, the id is always read
+     */
+    private static GameSession read(Map<String, Object> json, Collection<String> fields) {
+        if (fields == null)
+            return new GameSession(json)
+        Map<String, Object> projected = new HashMap<String, Object>()
+        projected["id"] = json["id"]
+        for (String field : fields)
+            projected[field] = json[field]
+        return new GameSession(projected)
+    }
+
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields) {
+        List<GameSession> found = []
+        if (id != null) {
+            Map<String, Object> json = sessions.get(id)
+            if (json != null && (user == null || user == json["user"]))
+                found.add(read(json, fields))
+        } else {
+            for (Map<String, Object> json : sessions.values()) {
+                if (user == null || user == json["user"])
+                    found.add(read(json, fields))
+            }
+        }
+        return fulfilled(found)
+    }
+
+    @Override
+    Promise<Void> cleanup(long maxAge) {
+        long minAge = System.currentTimeMillis() - maxAge * 1000
+        Iterator<Map<String, Object>> iterator = sessions.values().iterator()
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), minAge))
+                iterator.remove()
+        }
+        return fulfilled((Void) null)
+    }
+
+    @Override
+    Promise<List<GameSession>> findOpen() {
+        List<GameSession> found = []
+        for (Map<String, Object> json : sessions.values()) {
+            if (json["end"] == null)
+                found.add(new GameSession(json))
+        }
+        return fulfilled(found)
+    }
+
+    @Override
+    Promise<Integer> expire(List<UUID> ids, long maxAge) {
+        long minAge = System.currentTimeMillis() - maxAge * 1000
+        int expired = 0
+        for (UUID id : ids) {
+            Map<String, Object> json = sessions.get(id)
+            if (json != null && isExpired(json, minAge)) {
+                sessions.remove(id)
+                expired++
+            }
+        }
+        return fulfilled(expired)
+    }
+
+    @Override
+    Promise<List<UUID>> findExpired(long maxAge, int limit) {
+        long minAge = System.currentTimeMillis() - maxAge * 1000
+        List<UUID> found = []
+        for (Map.Entry<UUID, Map<String, Object>> entry : sessions.entrySet()) {
+            if (found.size() >= limit)
+                break
+            if (isExpired(entry.value, minAge))
+                found.add(entry.key)
+        }
+        return fulfilled(found)
+    }
+}
@@ -0,0 +1,89 @@
+package es.us.dad.gameregistry.server.repository
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.DatabaseException
+import org.vertx.groovy.core.eventbus.Message
+import org.vertx.java.core.logging.Logger
+
+/**
+ * Cluster-wide lock stored in the {@code locks} collection, shared by all the registry nodes.
+ *
+ * A lock is a lease: it is held by one owner until it is released or until it expires, so a
+ * crashed node can't keep it forever. The owner renews the lease by acquiring it again.
+ * Acquiring is a single upsert which only matches a free, expired or already owned lock; if
+ * the lock is held by someone else the upsert collides with its {@code _id} and fails.
+ */
+class MongoLock {
+
+    private final PersistorClient persistor
+    private final Logger logger
+    private final String address
+    private final String name
+    private final String owner = UUID.randomUUID().toString()
+
+    /**
+     * @param address event bus address of the mongo-persistor
+     * @param name name of the lock
+     */
+    public MongoLock(PersistorClient persistor, Logger logger, String address, String name) {
+        this.persistor = persistor
+        this.logger = logger
+        this.address = address
+        this.name = name
+    }
+
+    /**
+     * acquires or renews the lock
+     * @param leaseTime milliseconds the lock is held unless it is renewed
+     * @return true if the lock is held by this owner now
+     */
+    public Promise<Boolean> acquire(long leaseTime) {
+        Promise<Boolean> p = new Promise<Boolean>()
+
+        long now = System.currentTimeMillis()
+        persistor.send(address, [action    : "update",
+                                 collection: "locks",
+                                 criteria  : [_id  : name,
+                                              '$or': [[owner: owner], [expires: ['$lt': now]]]],
+                                 objNew    : ['$set': [owner: owner, expires: now + leaseTime]],
+                                 upsert    : true, multi: false]) { Message message ->
+            Map messageBody = message.body
+
+            if (messageBody["status"].equals("ok")) {
+                p.fulfill(messageBody["number"] == 1)
+            } else if (messageBody["message"]?.toString()?.contains("E11000")) {
+                // duplicate key: the lock is held by someone else
+                p.fulfill(false)
+            } else {
+                DatabaseException ex = new DatabaseException(messageBody["message"].toString())
+                logger.error("Could not acquire lock ${name}: ${ex.message}")
+                p.reject(ex)
+            }
+        }
+
+        return p
+    }
+
+    /**
+     * releases the lock if it is held by this owner
+     */
+    public Promise<Void> release() {
+        Promise<Void> p = new Promise<Void>()
+
+        persistor.send(address, [action    : "delete",
+                                 collection: "locks",
+                                 matcher   : [_id: name, owner: owner]]) { Message message ->
+            Map messageBody = message.body
+
+            if (messageBody["status"].equals("ok")) {
+                p.fulfill(null)
+            } else {
+                DatabaseException ex = new DatabaseException(messageBody["message"].toString())
+                logger.error("Could not release lock ${name}: ${ex.message}")
+                p.reject(ex)
+            }
+        }
+
+        return p
+    }
+}
@@ -5,18 +5,109 @@ import es.us.dad.gameregistry.shared.domain.DomainObject
 import es.us.dad.gameregistry.shared.domain.GameSession
 import es.us.dad.gameregistry.server.exception.DatabaseException
 import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import groovy.transform.CompileStatic
 import org.vertx.groovy.core.Vertx
 import org.vertx.groovy.core.eventbus.Message
 import org.vertx.java.core.logging.Logger
 
+import java.nio.ByteBuffer
+
+/**
+ * Sessions in the {@code game_session} collection. The id of a session is its {@code _id}, a binary
+ * UUID (subtype 4) written in the extended json of the persistor, which needs {@code use_mongo_types}.
+ *
+ * Sessions stored by older versions keep a generated {@code _id} and their id as a string in
+ * {@code id}. With {@code legacyIds} they are still found, updated and deleted by their id, an
+ * update rewrites them in the new form, and {@link #migrateLegacySessions} rewrites them in batches.
+ */
+@CompileStatic
 class MongoSessionRepository implements ISessionRepository {
 
-    private final Vertx vertx
+    public static final String DEFAULT_ADDRESS = "gameregistry.db"
+
+    private final PersistorClient persistor
     private final Logger logger
+    private final ReadRouter readRouter
+    private final boolean legacyIds
 
     public MongoSessionRepository(Vertx vertx, Logger logger) {
-        this.vertx = vertx
+        this(vertx, logger, DEFAULT_ADDRESS, null, 0)
+    }
+
+    /**
+     * @param address event bus address of the mongo-persistor used for writes
+     * @param readAddress event bus address of the mongo-persistor used for read-only queries,
+     *                    or {@code null} to send them to {@code address} too
+     * @param readYourWritesWindow milliseconds after a write during which reads of the written
+     *                             sessions are still sent to {@code address}
+     * @see ReadRouter
+     */
+    public MongoSessionRepository(Vertx vertx, Logger logger, String address, String readAddress, long readYourWritesWindow) {
+        this(new PersistorClient(vertx, logger), logger, address, readAddress, readYourWritesWindow)
+    }
+
+    /**
+     * @param persistor sends the commands to the mongo-persistor and measures them
+     */
+    public MongoSessionRepository(PersistorClient persistor, Logger logger, String address, String readAddress,
+                                  long readYourWritesWindow) {
+        this(persistor, logger, address, readAddress, readYourWritesWindow, false)
+    }
+
+    /**
+     * @param legacyIds also match the sessions stored with their id in {@code id}, until they are migrated
+     */
+    public MongoSessionRepository(PersistorClient persistor, Logger logger, String address, String readAddress,
+                                  long readYourWritesWindow, boolean legacyIds) {
+        this.persistor = persistor
         this.logger = logger
+        this.readRouter = new ReadRouter(address, readAddress, readYourWritesWindow)
+        this.legacyIds = legacyIds
+    }
+
+    /**
+     * @return the id as a binary {@code _id}, in the extended json understood by the persistor
+     */
+    public static Map<String, Object> binaryId(UUID id) {
+        ByteBuffer bytes = ByteBuffer.allocate(16)
+        bytes.putLong(id.mostSignificantBits).putLong(id.leastSignificantBits)
+        return ['$binary': (Object) Base64.encoder.encodeToString(bytes.array()), '$type': (Object) 4]
+    }
+
+    /**
+     * @return the id of a stored session, from its binary {@code _id} or its legacy {@code id}
+     */
+    public static UUID idOf(Map document) {
+        Object id = document["_id"]
+        if (id instanceof Map && ((Map) id).containsKey('$binary')) {
+            ByteBuffer bytes = ByteBuffer.wrap(Base64.decoder.decode(((Map) id)['$binary'] as String))
+            return new UUID(bytes.getLong(), bytes.getLong())
+        }
+        return UUID.fromString(document["id"] as String)
+    }
+
+    public static Map<String, Object> toDocument(GameSession session) {
+        Map<String, Object> document = session.toJsonMap()
+        document.remove("id")
+        document["_id"] = binaryId(session.id)
+        return document
+    }
+
+    public static GameSession fromDocument(Map document) {
+        Map<String, Object> json = new HashMap<String, Object>(document)
+        json.remove("_id")
+        json["id"] = idOf(document).toString()
+        return new GameSession(json)
+    }
+
+    /**
+     * @return matcher of the session, in either form if legacy ids are enabled
+     */
+    private Map<String, Object> idMatcher(UUID id) {
+        Map<String, Object> matcher = [_id: (Object) binaryId(id)]
+        if (!legacyIds)
+            return matcher
+        return ['$or': (Object) [matcher, [id: id.toString()]]]
     }
 
     private DatabaseException prepareAndLogException(Map messageBody) {
@@ -30,12 +121,22 @@ class MongoSessionRepository implements ISessionRepository {
     Promise<GameSession> create(GameSession session) {
         Promise<GameSession> p = new Promise<GameSession>()
 
-        vertx.eventBus.send("gameregistry.db", [action    : "save",
-                                                collection: "game_session",
-                                                document  : session.toJsonMap()]) { Message message ->
-            Map messageBody = message.body
+        // upsert with $setOnInsert instead of save: creating a session which already exists (ie the
+        // asynchronous write of a session that was meanwhile finished on another node) is a no-op.
+        // The _id of the criteria is copied into the inserted document.
+        Map<String, Object> document = toDocument(session)
+        Object id = document.remove("_id")
+        // reads issued while the write is in flight and within the window after its reply go to the primary
+        readRouter.wrote(session.id, session.user)
+        persistor.send(readRouter.primaryAddress, [action    : "update",
+                                                   collection: "game_session",
+                                                   criteria  : [_id: id],
+                                                   objNew    : ['$setOnInsert': document],
+                                                   upsert    : true, multi: false]) { Message message ->
+            Map messageBody = (Map) message.body()
 
             if (messageBody["status"].equals("ok")) {
+                readRouter.wrote(session.id, session.user)
                 p.fulfill(session)
             } else {
                 DatabaseException ex = prepareAndLogException(messageBody)
@@ -50,15 +151,20 @@ class MongoSessionRepository implements ISessionRepository {
     Promise<GameSession> update(GameSession session) {
         Promise<GameSession> p = new Promise<GameSession>()
 
-        vertx.eventBus.send("gameregistry.db", [action    : "update",
-                                                collection: "game_session",
-                                                criteria  : [id: session.id.toString()],
-                                                objNew    : session.toJsonMap(),
-                                                upsert    : true, multi: false]) { Message message ->
-            Map messageBody = message.body
+        readRouter.wrote(session.id, session.user)
+        persistor.send(readRouter.primaryAddress, [action    : "update",
+                                                   collection: "game_session",
+                                                   criteria  : [_id: binaryId(session.id)],
+                                                   objNew    : toDocument(session),
+                                                   upsert    : true, multi: false]) { Message message ->
+            Map messageBody = (Map) message.body()
 
             if (messageBody["status"].equals("ok")) {
-                p.fulfill(session)
+                readRouter.wrote(session.id, session.user)
+                if (legacyIds)
+                    deleteLegacy([session.id]).then({ p.fulfill(session) }).fail({ Exception ex -> p.reject(ex) })
+                else
+                    p.fulfill(session)
             } else {
                 DatabaseException ex = prepareAndLogException(messageBody)
                 p.reject(ex)
@@ -70,15 +176,24 @@ class MongoSessionRepository implements ISessionRepository {
 
     @Override
     Promise<Void> delete(UUID id) {
+        return delete(id, null)
+    }
+
+    @Override
+    Promise<Void> delete(UUID id, String user) {
         Promise<Void> p = new Promise<Void>()
 
-        vertx.eventBus.send("gameregistry.db", [action    : "delete",
-                                                collection: "game_session",
-                                                matcher   : [id: id.toString()]]) { Message message ->
-            Map messageBody = message.body
+        // with the user, the queries of the user's sessions don't find the deleted session on a secondary
+        readRouter.wrote(id, user)
+        persistor.send(readRouter.primaryAddress, [action    : "delete",
+                                                   collection: "game_session",
+                                                   matcher   : idMatcher(id)]) { Message message ->
+            Map messageBody = (Map) message.body()
 
             if (messageBody["status"].equals("ok")) {
-                if (messageBody["number"] == 1)
+                readRouter.wrote(id, user)
+                // both forms of a legacy session exist while an update rewrites it
+                if ((messageBody["number"] as int) >= 1)
                     p.fulfill(null)
                 else
                     p.reject(new ObjectNotFoundException("GameSession not found."));
@@ -107,28 +222,137 @@ class MongoSessionRepository implements ISessionRepository {
         return p
     }
 
+    /**
+     * sends a find to the persistor and collects the results of all the batches
+     */
+    private Promise<List<GameSession>> findSessions(String address, Map matcher, Map keys = null) {
+        Promise<List<GameSession>> p = new Promise<List<GameSession>>()
+        PersistorClient persistor = this.persistor
+        List<GameSession> sessions = []
+        Map command = [action    : "find",
+                       collection: "game_session",
+                       matcher   : matcher]
+        if (keys != null)
+            command["keys"] = keys
+
+        Closure replyHandler
+        replyHandler = { Message message ->
+            Map messageBody = (Map) message.body()
+
+            if (messageBody["status"].equals("ok") || messageBody["status"].equals("more-exist")) {
+                List<Map> results = messageBody["results"] as List<Map>
+                results.each { Map json ->
+                    sessions.add(fromDocument(json))
+                }
+
+                // the persistor replies with batches of 100 documents, ask for the next one
+                if (messageBody["status"].equals("more-exist"))
+                    persistor.reply(message, command, [:], replyHandler)
+                else
+                    p.fulfill(legacyIds ? withoutDuplicates(sessions) : sessions)
+            } else {
+                DatabaseException ex = prepareAndLogException(messageBody)
+                p.reject(ex)
+            }
+        }
+
+        persistor.send(address, command, replyHandler)
+
+        return p
+    }
+
+    /**
+     * @return the sessions with one session per id, a legacy session is found twice while an update rewrites it
+     */
+    private static List<GameSession> withoutDuplicates(List<GameSession> sessions) {
+        Map<UUID, GameSession> byId = new LinkedHashMap<UUID, GameSession>()
+        for (GameSession session : sessions)
+            byId.put(session.id, session)
+        return byId.size() == sessions.size() ? sessions : new ArrayList<GameSession>(byId.values())
+    }
+
     @Override
     Promise<List<GameSession>> find(UUID id, String user) {
-        Promise<List<GameSession>> p = new Promise<List<GameSession>>()
+        return find(id, user, null)
+    }
 
+    /**
+     * the fields are read with a projection, so the others (ie a large result) never leave the database
+     */
+    @Override
+    Promise<List<GameSession>> find(UUID id, String user, Collection<String> fields) {
         Map matcher = [:]
         if (id != null)
-            matcher['id'] = id.toString()
+            matcher.putAll(idMatcher(id))
         if (user != null)
             matcher['user'] = user
 
-        vertx.eventBus.send("gameregistry.db", [action    : "find",
-                                                collection: "game_session",
-                                                matcher   : matcher]) { Message message ->
-            Map messageBody = message.body
+        return findSessions(readRouter.addressFor(id, user), matcher, keysOf(fields))
+    }
+
+    /**
+     * @return projection of the fields, or {@code null} for all of them; the _id is always read
+     */
+    private Map<String, Object> keysOf(Collection<String> fields) {
+        if (fields == null)
+            return null
+
+        Map<String, Object> keys = [_id: (Object) 1]
+        if (legacyIds)
+            keys["id"] = 1
+        for (String field : fields) {
+            if (field != "id")
+                keys[field] = 1
+        }
+        return keys
+    }
+
+    @Override
+    Promise<Void> cleanup(long maxAge) {
+        Promise<Void> p = new Promise<Void>()
+
+        // maxAge: seconds
+        Date minAgeDate = new Date(new Date().getTime() - maxAge * 1000)
+        long minAge = DomainObject.formatDate(minAgeDate)
+        readRouter.wroteAll()
+        persistor.send(readRouter.primaryAddress, [action    : "delete",
+                                                   collection: "game_session",
+                                                   matcher   : ["end"  : null,
+                                                                "start": ['$lt': minAge]]]) { Message message ->
+            Map messageBody = (Map) message.body()
 
             if (messageBody["status"].equals("ok")) {
-                List<Map> results = messageBody["results"] as List<Map>
-                List<GameSession> sessions = results.collect { Map json ->
-                    new GameSession(json)
-                }
+                p.fulfill(null)
+            } else {
+                DatabaseException ex = prepareAndLogException(messageBody)
+                p.reject(ex)
+            }
+        }
+
+        return p
+    }
+
+    @Override
+    Promise<List<GameSession>> findOpen() {
+        return findSessions(readRouter.primaryAddress, ["end": null])
+    }
 
-                p.fulfill(sessions)
+    @Override
+    Promise<Integer> expire(List<UUID> ids, long maxAge) {
+        Promise<Integer> p = new Promise<Integer>()
+
+        // only sessions which are still open and older than maxAge (seconds), a session might
+        // have been finished on another node meanwhile
+        long minAge = DomainObject.formatDate(new Date(new Date().getTime() - maxAge * 1000))
+        readRouter.wroteAll()
+        persistor.send(readRouter.primaryAddress, [action    : "delete",
+                                                   collection: "game_session",
+                                                   matcher   : idsMatcher(ids) + ["end"  : null,
+                                                                                 "start": ['$lt': minAge]]]) { Message message ->
+            Map messageBody = (Map) message.body()
+
+            if (messageBody["status"].equals("ok")) {
+                p.fulfill(messageBody["number"] as Integer)
             } else {
                 DatabaseException ex = prepareAndLogException(messageBody)
                 p.reject(ex)
@@ -138,18 +362,49 @@ class MongoSessionRepository implements ISessionRepository {
         return p
     }
 
+    private Map<String, Object> idsMatcher(List<UUID> ids) {
+        Map<String, Object> matcher = [_id: (Object) ['$in': ids.collect { UUID id -> binaryId(id) }]]
+        if (!legacyIds)
+            return matcher
+        return ['$or': (Object) [matcher, [id: ['$in': ids.collect { UUID id -> id.toString() }]]]]
+    }
+
     @Override
-    Promise<Void> cleanup(long maxAge) {
-        Promise<Void> p = new Promise<Void>()
+    Promise<List<UUID>> findExpired(long maxAge, int limit) {
+        Promise<List<UUID>> p = new Promise<List<UUID>>()
 
         // maxAge: seconds
-        Date minAgeDate = new Date(new Date().getTime() - maxAge * 1000)
-        long minAge = DomainObject.formatDate(minAgeDate)
-        vertx.eventBus.send("gameregistry.db", [action    : "delete",
-                                                collection: "game_session",
-                                                matcher   : ["end"  : null,
-                                                             "start": ['$lt': minAge]]]) { Message message ->
-            Map messageBody = message.body
+        long minAge = DomainObject.formatDate(new Date(new Date().getTime() - maxAge * 1000))
+        persistor.send(readRouter.primaryAddress, [action    : "find",
+                                                   collection: "game_session",
+                                                   matcher   : ["end"  : null,
+                                                                "start": ['$lt': minAge]],
+                                                   keys      : legacyIds ? [_id: 1, id: 1] : [_id: 1],
+                                                   limit     : limit,
+                                                   batch_size: limit]) { Message message ->
+            Map messageBody = (Map) message.body()
+
+            if (messageBody["status"].equals("ok")) {
+                p.fulfill((messageBody["results"] as List<Map>).collect { Map json -> idOf(json) })
+            } else {
+                DatabaseException ex = prepareAndLogException(messageBody)
+                p.reject(ex)
+            }
+        }
+
+        return p
+    }
+
+    /**
+     * deletes the legacy form of the sessions, once they were written with their binary id
+     */
+    private Promise<Void> deleteLegacy(List<UUID> ids) {
+        Promise<Void> p = new Promise<Void>()
+
+        persistor.send(readRouter.primaryAddress, [action    : "delete",
+                                                   collection: "game_session",
+                                                   matcher   : [id: ['$in': ids.collect { UUID id -> id.toString() }]]]) { Message message ->
+            Map messageBody = (Map) message.body()
 
             if (messageBody["status"].equals("ok")) {
                 p.fulfill(null)
@@ -161,4 +416,73 @@ class MongoSessionRepository implements ISessionRepository {
 
         return p
     }
+
+    /**
+     * @return whether the legacy form of a session is still stored
+     */
+    private Promise<Boolean> legacyExists(UUID id) {
+        Promise<Boolean> p = new Promise<Boolean>()
+
+        persistor.send(readRouter.primaryAddress, [action    : "find",
+                                                   collection: "game_session",
+                                                   matcher   : [id: id.toString()],
+                                                   keys      : [_id: 1],
+                                                   limit     : 1]) { Message message ->
+            Map messageBody = (Map) message.body()
+
+            if (messageBody["status"].equals("ok"))
+                p.fulfill(!(messageBody["results"] as List).isEmpty())
+            else
+                p.reject(prepareAndLogException(messageBody))
+        }
+
+        return p
+    }
+
+    /**
+     * rewrites up to {@code limit} sessions stored with their id in {@code id} with their binary id
+     * @return number of legacy sessions handled (rewritten, or skipped as deleted meanwhile), 0 once
+     *         there are none left
+     */
+    public Promise<Integer> migrateLegacySessions(int limit) {
+        Promise<Integer> p = new Promise<Integer>()
+
+        persistor.send(readRouter.primaryAddress, [action    : "find",
+                                                   collection: "game_session",
+                                                   matcher   : [id: ['$exists': true]],
+                                                   limit     : limit,
+                                                   batch_size: limit]) { Message message ->
+            Map messageBody = (Map) message.body()
+
+            if (!messageBody["status"].equals("ok") && !messageBody["status"].equals("more-exist")) {
+                p.reject(prepareAndLogException(messageBody))
+                return
+            }
+            List<GameSession> sessions = (messageBody["results"] as List<Map>).collect { Map json -> fromDocument(json) }
+            if (sessions.isEmpty()) {
+                p.fulfill(0)
+                return
+            }
+
+            // create doesn't overwrite a session an update already rewrote meanwhile, and isn't run for a
+            // session deleted since the find, which it would bring back as open
+            int pending = sessions.size()
+            boolean failed = false
+            sessions.each { GameSession session ->
+                legacyExists(session.id).then({ Boolean exists ->
+                    return exists ? create(session) : null
+                }).then({
+                    if (--pending == 0 && !failed)
+                        deleteLegacy(sessions*.id).then({ p.fulfill(sessions.size()) }).fail({ Exception ex -> p.reject(ex) })
+                }).fail({ Exception ex ->
+                    if (!failed) {
+                        failed = true
+                        p.reject(ex)
+                    }
+                })
+            }
+        }
+
+        return p
+    }
 }
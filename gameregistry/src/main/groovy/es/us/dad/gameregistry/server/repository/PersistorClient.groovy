@@ -0,0 +1,146 @@
+package es.us.dad.gameregistry.server.repository
+
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import groovy.json.JsonOutput
+import org.vertx.groovy.core.AsyncResult
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.eventbus.Message
+import org.vertx.java.core.eventbus.impl.JsonObjectMessage
+import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Sends commands to a mongo-persistor over the event bus and measures the round trips.
+ *
+ * For every action (find, update, delete, ...) it records:
+ * <ul>
+ *     <li>{@code mongo_<action>_us}: round trip latency in microseconds</li>
+ *     <li>{@code mongo_<action>_in_flight}: commands waiting for their reply</li>
+ *     <li>{@code mongo_<action>_errors}: replies with an error status</li>
+ *     <li>{@code mongo_<action>_documents}: documents returned (find) or affected (update, delete)</li>
+ * </ul>
+ *
+ * Round trips slower than {@code slowQueryThreshold} milliseconds are logged with their matcher. A
+ * command which gets no reply within {@code timeout} milliseconds is answered with an error reply, as
+ * if the persistor had failed it, so its caller (and the slot it holds in the admission control)
+ * isn't left waiting forever.
+ */
+class PersistorClient {
+
+    private static class ActionMetrics {
+        Histogram latency
+        Histogram documents
+        LongAdder errors
+        AtomicLong inFlight
+    }
+
+    private final Vertx vertx
+    private final Logger logger
+    private final MetricsRegistry metrics
+    private final long slowQueryThreshold
+    private final long timeout
+    private final Map<String, ActionMetrics> actions = new HashMap<String, ActionMetrics>()
+
+    public static final long DEFAULT_TIMEOUT = 10000
+
+    public PersistorClient(Vertx vertx, Logger logger) {
+        this(vertx, logger, new MetricsRegistry(), 0)
+    }
+
+    public PersistorClient(Vertx vertx, Logger logger, MetricsRegistry metrics, long slowQueryThreshold) {
+        this(vertx, logger, metrics, slowQueryThreshold, DEFAULT_TIMEOUT)
+    }
+
+    /**
+     * @param slowQueryThreshold milliseconds after which a round trip is logged, 0 to disable the log
+     * @param timeout milliseconds to wait for a reply
+     */
+    public PersistorClient(Vertx vertx, Logger logger, MetricsRegistry metrics, long slowQueryThreshold,
+                           long timeout) {
+        this.vertx = vertx
+        this.logger = logger
+        this.metrics = metrics
+        this.slowQueryThreshold = slowQueryThreshold
+        this.timeout = timeout
+    }
+
+    private ActionMetrics metricsOf(String action) {
+        ActionMetrics actionMetrics = actions.get(action)
+        if (actionMetrics == null) {
+            actionMetrics = new ActionMetrics(latency: metrics.histogram("mongo_${action}_us".toString()),
+                                              documents: metrics.histogram("mongo_${action}_documents".toString()),
+                                              errors: metrics.counter("mongo_${action}_errors".toString()),
+                                              inFlight: new AtomicLong())
+            AtomicLong inFlight = actionMetrics.inFlight
+            metrics.gauge("mongo_${action}_in_flight".toString(), { inFlight.get() })
+            actions.put(action, actionMetrics)
+        }
+        return actionMetrics
+    }
+
+    /**
+     * sends a command to the persistor at {@code address}, {@code replyHandler} is called with the reply message
+     */
+    public void send(String address, Map command, Closure replyHandler) {
+        vertx.eventBus.sendWithTimeout(address, command, timeout, orTimeout(address, command, measure(command, replyHandler)))
+    }
+
+    /**
+     * answers a reply of the persistor (ie to fetch the next batch of a find)
+     * @param command the command the reply belongs to
+     */
+    public void reply(Message message, Map command, Map body, Closure replyHandler) {
+        message.replyWithTimeout(body, timeout, orTimeout(message.replyAddress(), command, measure(command, replyHandler)))
+    }
+
+    /**
+     * @return handler of the result of a send with a timeout, which passes the reply or, if there is
+     *         none, an error reply to {@code replyHandler}
+     */
+    private Closure orTimeout(String address, Map command, Closure replyHandler) {
+        return { AsyncResult<Message> result ->
+            if (result.succeeded) {
+                replyHandler.call(result.result)
+                return
+            }
+
+            String error = "No reply to the mongo ${command['action']} on ${command['collection']}: ${result.cause.message}"
+            logger.warn(error)
+            replyHandler.call(new Message(new JsonObjectMessage(false, address,
+                                                                new JsonObject([status: "error", message: error]))))
+        }
+    }
+
+    private Closure measure(Map command, Closure replyHandler) {
+        String action = command["action"]
+        ActionMetrics actionMetrics = metricsOf(action)
+        long started = System.nanoTime()
+        actionMetrics.inFlight.incrementAndGet()
+
+        return { Message message ->
+            long micros = (System.nanoTime() - started).intdiv(1000) as long
+            actionMetrics.inFlight.decrementAndGet()
+            actionMetrics.latency.record(micros)
+
+            Map body = message.body
+            if (body["status"] == "error")
+                actionMetrics.errors.increment()
+            else if (body["results"] instanceof List)
+                actionMetrics.documents.record((body["results"] as List).size())
+            else if (body["number"] != null)
+                actionMetrics.documents.record(body["number"] as long)
+
+            if (slowQueryThreshold > 0 && micros >= slowQueryThreshold * 1000) {
+                Object matcher = command["matcher"] ?: command["criteria"]
+                logger.warn("Slow mongo ${action} on ${command['collection']} (${micros.intdiv(1000)} ms): " +
+                        JsonOutput.toJson(matcher))
+            }
+
+            replyHandler.call(message)
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package es.us.dad.gameregistry.server.repository
+
+/**
+ * Decides which mongo-persistor address a read query is sent to.
+ *
+ * Reads go to the read address (ie a persistor configured with a secondary read preference)
+ * unless the data they touch was written less than {@code readYourWritesWindow} milliseconds
+ * ago. In that case they go to the primary address, so a client always sees its own writes
+ * even if the secondaries are lagging behind.
+ */
+class ReadRouter {
+
+    // recentWrites is pruned when it grows beyond this size
+    private static final int PRUNE_THRESHOLD = 1024
+
+    private final String primaryAddress
+    private final String readAddress
+    private final long readYourWritesWindow
+
+    // session ids and users written recently -> time of the last write (ms)
+    private final Map<String, Long> recentWrites = new HashMap<String, Long>()
+    // time of the last write of any kind, used for unfiltered queries
+    private long lastWrite = 0
+
+    /**
+     * @param primaryAddress address of the persistor used for writes
+     * @param readAddress address of the persistor used for reads, or {@code null} to read from the primary
+     * @param readYourWritesWindow milliseconds after a write during which reads touching the written
+     *                             data still go to the primary (0 disables it)
+     */
+    public ReadRouter(String primaryAddress, String readAddress, long readYourWritesWindow) {
+        this.primaryAddress = primaryAddress
+        this.readAddress = readAddress ?: primaryAddress
+        this.readYourWritesWindow = readYourWritesWindow
+    }
+
+    public String getPrimaryAddress() {
+        return primaryAddress
+    }
+
+    public String getReadAddress() {
+        return readAddress
+    }
+
+    /**
+     * records a write of a session (create/update)
+     */
+    public void wrote(UUID id, String user) {
+        if (!tracksWrites())
+            return
+
+        long now = System.currentTimeMillis()
+        lastWrite = now
+        if (id != null)
+            recentWrites["id:" + id] = now
+        if (user != null)
+            recentWrites["user:" + user] = now
+
+        if (recentWrites.size() > PRUNE_THRESHOLD)
+            prune(now)
+    }
+
+    /**
+     * records a write which can't be narrowed to a session or user (ie cleanup)
+     */
+    public void wroteAll() {
+        if (tracksWrites())
+            lastWrite = System.currentTimeMillis()
+    }
+
+    /**
+     * @param id session id the query filters by, or {@code null}
+     * @param user user the query filters by, or {@code null}
+     * @return the address the query should be sent to
+     */
+    public String addressFor(UUID id, String user) {
+        if (readAddress == primaryAddress)
+            return primaryAddress
+        if (!tracksWrites())
+            return readAddress
+
+        long since = System.currentTimeMillis() - readYourWritesWindow
+        if (id == null && user == null)
+            return lastWrite > since ? primaryAddress : readAddress
+
+        if (id != null && writtenSince("id:" + id, since))
+            return primaryAddress
+        if (user != null && writtenSince("user:" + user, since))
+            return primaryAddress
+
+        return readAddress
+    }
+
+    private boolean tracksWrites() {
+        return readAddress != primaryAddress && readYourWritesWindow > 0
+    }
+
+    private boolean writtenSince(String key, long since) {
+        Long written = recentWrites[key]
+        return written != null && written > since
+    }
+
+    private void prune(long now) {
+        long since = now - readYourWritesWindow
+        Iterator<Map.Entry<String, Long>> it = recentWrites.entrySet().iterator()
+        while (it.hasNext()) {
+            if (it.next().value <= since)
+                it.remove()
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package es.us.dad.gameregistry.server.repository
+
+import groovy.transform.CompileStatic
+
+/**
+ * Concurrency limit which adapts to the latency of the backend, like the congestion window of TCP Vegas.
+ *
+ * Every completed call reports its round trip time. The queue building up in the backend is
+ * estimated from how much slower the call was than the fastest one seen ({@code minRtt}): with no
+ * queue the limit grows, with a long one it shrinks, and it drops further when calls fail.
+ * {@code minRtt} is measured anew every {@code PROBE_INTERVAL} samples so the limit follows a
+ * backend whose baseline latency changes. Only used from the event loop.
+ */
+@CompileStatic
+class VegasLimit {
+
+    private static final int PROBE_INTERVAL = 1000
+
+    private final int minLimit
+    private final int maxLimit
+    private double limit
+    private long minRtt = 0
+    private int samples = 0
+
+    /**
+     * @param initialLimit limit before the first samples
+     * @param minLimit lower bound of the limit
+     * @param maxLimit upper bound of the limit
+     */
+    VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit
+        this.maxLimit = maxLimit
+        this.limit = initialLimit
+    }
+
+    int getLimit() {
+        return (int) limit
+    }
+
+    long getMinRtt() {
+        return minRtt
+    }
+
+    /**
+     * @param rtt round trip time of the call in microseconds
+     * @param inFlight calls in flight when the call was started
+     * @param dropped the call failed because of the backend
+     */
+    void onSample(long rtt, int inFlight, boolean dropped) {
+        if (++samples >= PROBE_INTERVAL) {
+            samples = 0
+            minRtt = 0
+        }
+        if (rtt <= 0)
+            rtt = 1
+        if (minRtt == 0 || rtt < minRtt)
+            minRtt = rtt
+
+        double log = Math.max(1.0d, Math.log10(limit))
+        double newLimit
+        if (dropped) {
+            newLimit = limit - log
+        } else if (inFlight * 2 < limit) {
+            // the limit isn't the bottleneck, the samples say nothing about it
+            return
+        } else {
+            double queue = limit * (1.0d - minRtt / (double) rtt)
+            if (queue <= log)
+                newLimit = limit + 6 * log
+            else if (queue < 3 * log)
+                newLimit = limit + log
+            else if (queue > 6 * log)
+                newLimit = limit - log
+            else
+                return
+        }
+
+        limit = Math.max((double) minLimit, Math.min((double) maxLimit, newLimit))
+    }
+}
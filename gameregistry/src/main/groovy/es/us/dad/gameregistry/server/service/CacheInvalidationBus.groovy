@@ -0,0 +1,129 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.eventbus.Message
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Keeps the session caches of all registry nodes coherent.
+ *
+ * Mutations invalidate the local cache right away and are published to every node on
+ * {@link #ADDRESS}, batched for up to {@code batchDelay} milliseconds. A batch looks like:
+ *
+ * <pre><code>
+ *  {"node": "...", "sent": 1431234567890, "all": false,
+ *   "ids": ["18aef6a4-d415-4a19-8261-fe6c18d8bac0", ...], "versions": [2, ...]}
+ * </code></pre>
+ *
+ * where each version is the lifecycle version the session reached (see {@link SessionCache}).
+ * The lag between publishing and applying a batch is recorded in the
+ * {@code cache_invalidation_lag_ms} histogram; it includes the clock skew between nodes.
+ */
+class CacheInvalidationBus {
+
+    public static final String ADDRESS = "gameregistry.cache.invalidate"
+
+    private final Vertx vertx
+    private final SessionCache cache
+    private final long batchDelay
+    private final int maxBatch
+    private final String nodeId = UUID.randomUUID().toString()
+
+    private final List<String> pendingIds = []
+    private final List<Integer> pendingVersions = []
+    private boolean pendingAll = false
+    private long flushTimer = -1
+
+    private final Histogram lag
+    private final LongAdder published
+    private final LongAdder received
+
+    /**
+     * @param batchDelay milliseconds invalidations are collected before they are published
+     * @param maxBatch a batch is published right away once it holds this many invalidations
+     */
+    public CacheInvalidationBus(Vertx vertx, SessionCache cache, MetricsRegistry metrics, long batchDelay, int maxBatch) {
+        this.vertx = vertx
+        this.cache = cache
+        this.batchDelay = batchDelay
+        this.maxBatch = maxBatch
+
+        this.lag = metrics.histogram("cache_invalidation_lag_ms")
+        this.published = metrics.counter("cache_invalidations_published")
+        this.received = metrics.counter("cache_invalidations_received")
+        metrics.gauge("session_cache_size", { cache.size() })
+    }
+
+    /**
+     * starts consuming the invalidations published by the other nodes
+     */
+    public void start() {
+        vertx.eventBus.registerHandler(ADDRESS) { Message message ->
+            Map body = message.body
+            if (body["node"] == nodeId)
+                return
+
+            if (body["all"]) {
+                cache.invalidateAll()
+            }
+            List ids = body["ids"] as List
+            List versions = body["versions"] as List
+            for (int i = 0; i < ids.size(); i++)
+                cache.invalidate(UUID.fromString(ids[i] as String), versions[i] as int)
+
+            received.add(ids.size())
+            lag.record(System.currentTimeMillis() - (body["sent"] as long))
+        }
+    }
+
+    /**
+     * invalidates a session which reached {@code version} on every node
+     */
+    public void invalidate(UUID id, int version) {
+        cache.invalidate(id, version)
+
+        pendingIds.add(id.toString())
+        pendingVersions.add(version)
+        scheduleFlush()
+    }
+
+    /**
+     * empties the caches of every node (ie after a cleanup deleted an unknown set of sessions)
+     */
+    public void invalidateAll() {
+        cache.invalidateAll()
+
+        pendingAll = true
+        scheduleFlush()
+    }
+
+    private void scheduleFlush() {
+        if (pendingIds.size() >= maxBatch) {
+            if (flushTimer != -1)
+                vertx.cancelTimer(flushTimer)
+            flush()
+        } else if (flushTimer == -1) {
+            flushTimer = vertx.setTimer(batchDelay, { flush() })
+        }
+    }
+
+    private void flush() {
+        flushTimer = -1
+        if (pendingIds.isEmpty() && !pendingAll)
+            return
+
+        vertx.eventBus.publish(ADDRESS, [node    : nodeId,
+                                         sent    : System.currentTimeMillis(),
+                                         all     : pendingAll,
+                                         ids     : new ArrayList<String>(pendingIds),
+                                         versions: new ArrayList<Integer>(pendingVersions)])
+
+        published.add(pendingIds.size())
+        pendingIds.clear()
+        pendingVersions.clear()
+        pendingAll = false
+    }
+}
@@ -0,0 +1,199 @@
+package es.us.dad.gameregistry.server.service
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoLock
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Background job which deletes the sessions that are open longer than {@code maxAge}.
+ *
+ * A run deletes at most {@code batchSize} sessions at once and waits {@code batchDelay}
+ * milliseconds between two batches, so a large backlog of abandoned sessions is worked off at
+ * a bounded rate instead of with one huge delete. Only the holder of the cluster lock runs the
+ * job; the lease is renewed before every batch and released at the end of the run.
+ *
+ * A batch which doesn't complete within the lease time (ie the database doesn't answer) ends the
+ * run as timed out, since the lock may already be held by another node; its late outcome is ignored.
+ *
+ * Pausing lets the current batch finish and ends the run; resuming starts a new run right away.
+ * Only used from the event loop of the rest server.
+ */
+class CleanupJob {
+
+    private final Vertx vertx
+    private final Logger logger
+    private final ISessionRepository sessionRepository
+    private final MongoLock lock
+    private final CacheInvalidationBus invalidations
+    private final long maxAge
+    private final int batchSize
+    private final long batchDelay
+    private final long leaseTime
+
+    private boolean running = false
+    private boolean paused = false
+    // incremented by every run, so a batch that completes after its run ended is ignored
+    private int runId = 0
+    private long runStarted
+    private long runDeleted
+    private int runBatches
+    private Map<String, Object> lastRun = null
+
+    private final Histogram batchDurations
+    private final Histogram runDurations
+    private final LongAdder cleaned
+    private final LongAdder skipped
+
+    /**
+     * @param lock cluster lock of the job, or {@code null} if every node may run it
+     * @param invalidations drops deleted sessions from the caches, or {@code null}
+     * @param maxAge seconds an open session lives
+     * @param batchSize maximum number of sessions deleted at once
+     * @param batchDelay milliseconds between two batches
+     * @param leaseTime milliseconds the lock is held without being renewed
+     */
+    public CleanupJob(Vertx vertx, Logger logger, ISessionRepository sessionRepository, MongoLock lock,
+                      CacheInvalidationBus invalidations, MetricsRegistry metrics,
+                      long maxAge, int batchSize, long batchDelay, long leaseTime) {
+        this.vertx = vertx
+        this.logger = logger
+        this.sessionRepository = sessionRepository
+        this.lock = lock
+        this.invalidations = invalidations
+        this.maxAge = maxAge
+        this.batchSize = batchSize
+        this.batchDelay = batchDelay
+        this.leaseTime = leaseTime
+
+        this.batchDurations = metrics.histogram("cleanup_batch_ms")
+        this.runDurations = metrics.histogram("cleanup_run_ms")
+        this.cleaned = metrics.counter("sessions_cleaned")
+        this.skipped = metrics.counter("cleanup_runs_skipped")
+        metrics.gauge("cleanup_running", { running ? 1 : 0 })
+    }
+
+    /**
+     * starts a run unless one is running already or the job is paused
+     * @return true if a run was started
+     */
+    public boolean run() {
+        if (running || paused)
+            return false
+
+        running = true
+        runId++
+        runStarted = System.currentTimeMillis()
+        runDeleted = 0
+        runBatches = 0
+        nextBatch(runId)
+        return true
+    }
+
+    public void pause() {
+        paused = true
+    }
+
+    public void resume() {
+        paused = false
+        run()
+    }
+
+    /**
+     * @return state of the job and the progress of the current or the last run
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = [running: running, paused: paused]
+        if (running)
+            status["current"] = [started: runStarted, deleted: runDeleted, batches: runBatches]
+        if (lastRun != null)
+            status["last"] = lastRun
+        return status
+    }
+
+    private boolean isCurrent(int thisRun) {
+        return running && thisRun == runId
+    }
+
+    private void nextBatch(int thisRun) {
+        if (!isCurrent(thisRun))
+            return
+        if (paused) {
+            finishRun("paused")
+            return
+        }
+
+        long deadline = vertx.setTimer(leaseTime, {
+            if (isCurrent(thisRun))
+                finishRun("timed out")
+        })
+        if (lock == null) {
+            deleteBatch(thisRun, deadline)
+            return
+        }
+
+        lock.acquire(leaseTime).then({ Boolean held ->
+            if (!isCurrent(thisRun))
+                return
+            if (held) {
+                deleteBatch(thisRun, deadline)
+            } else {
+                // the cleanup runs on another node
+                vertx.cancelTimer(deadline)
+                skipped.increment()
+                running = false
+            }
+        }).fail({ Exception ex ->
+            if (isCurrent(thisRun))
+                finishRun("could not acquire the lock: ${ex.message}")
+        })
+    }
+
+    private void deleteBatch(int thisRun, long deadline) {
+        long batchStarted = System.currentTimeMillis()
+        List<UUID> batch = null
+
+        sessionRepository.findExpired(maxAge, batchSize).then({ List<UUID> ids ->
+            batch = ids
+            return ids.isEmpty() || !isCurrent(thisRun) ? 0 : sessionRepository.expire(ids, maxAge)
+        }).then({ Integer deleted ->
+            // rejects the fills of the expired, still open sessions which were read before the delete;
+            // a session finished in the meantime wasn't deleted and may still be cached
+            batch.each { UUID id -> invalidations?.invalidate(id, SessionCache.VERSION_FINISHED) }
+            batchDurations.record(System.currentTimeMillis() - batchStarted)
+            cleaned.add(deleted)
+            if (!isCurrent(thisRun))
+                return
+            vertx.cancelTimer(deadline)
+            runDeleted += deleted
+            runBatches++
+
+            if (batch.size() < batchSize)
+                finishRun("done")
+            else if (paused)
+                finishRun("paused")
+            else
+                vertx.setTimer(batchDelay, { nextBatch(thisRun) })
+        }).fail({ Exception ex ->
+            if (!isCurrent(thisRun))
+                return
+            vertx.cancelTimer(deadline)
+            finishRun("failed: ${ex.message}")
+        })
+    }
+
+    private void finishRun(String outcome) {
+        long duration = System.currentTimeMillis() - runStarted
+        runDurations.record(duration)
+        lastRun = [started: runStarted, duration: duration, deleted: runDeleted, batches: runBatches, outcome: outcome]
+        logger.info("Session cleanup deleted ${runDeleted} sessions in ${runBatches} batches (${duration} ms), ${outcome}.")
+
+        running = false
+        lock?.release()
+    }
+}
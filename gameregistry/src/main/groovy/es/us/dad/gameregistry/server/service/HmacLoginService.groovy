@@ -0,0 +1,206 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import groovy.transform.CompileStatic
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
+import org.vertx.java.core.impl.DefaultFutureResult
+
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Verifies signed, expiring tokens in-process instead of asking the login component.
+ *
+ * A token looks like {@code <key id>.<expiry>.<signature>}: the expiry in seconds since the epoch,
+ * and the signature the HMAC-SHA256 of {@code <key id>.<expiry>.<user>}, base64url-encoded without
+ * padding (see {@link #sign}). Tokens signed with any of the configured keys are accepted, so keys
+ * are rotated by adding the new one, signing with it, and removing the old one once its tokens
+ * expired. Tokens which expire further than {@code maxLifetime} in the future are rejected.
+ *
+ * The signature is compared in constant time. A verification reuses its buffers and the MACs of
+ * the keys, so it doesn't allocate for ASCII user names. Only used from the event loop of the rest
+ * server.
+ */
+@CompileStatic
+class HmacLoginService implements ILoginService {
+
+    public static final String ALGORITHM = "HmacSHA256"
+    private static final int SIGNATURE_LENGTH = 32
+    private static final int ENCODED_SIGNATURE_LENGTH = 43
+
+    private static final AsyncResult<Boolean> AUTHENTICATED = new DefaultFutureResult<Boolean>(true)
+    private static final AsyncResult<Boolean> NOT_AUTHENTICATED = new DefaultFutureResult<Boolean>(false)
+    private static final int[] BASE64URL = new int[128]
+    static {
+        Arrays.fill(BASE64URL, -1)
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+        for (int i = 0; i < alphabet.length(); i++)
+            BASE64URL[(int) alphabet.charAt(i)] = i
+    }
+
+    private final String[] keyIds
+    private final Mac[] macs
+    private final long clockSkew
+    private final long maxLifetime
+
+    private final byte[] input = new byte[256]
+    private final byte[] expected = new byte[SIGNATURE_LENGTH]
+    private final byte[] actual = new byte[SIGNATURE_LENGTH]
+
+    private final LongAdder rejected
+
+    /**
+     * @param keys base64-encoded secrets by key id
+     * @param clockSkew seconds a token is still accepted after it expired
+     * @param maxLifetime seconds a token may be valid for
+     */
+    public HmacLoginService(Map<String, String> keys, long clockSkew, long maxLifetime, MetricsRegistry metrics) {
+        if (keys.isEmpty())
+            throw new IllegalArgumentException("At least one token key is required.")
+
+        this.keyIds = new String[keys.size()]
+        this.macs = new Mac[keys.size()]
+        int i = 0
+        keys.each { String keyId, String secret ->
+            if (keyId.isEmpty() || keyId.contains("."))
+                throw new IllegalArgumentException("Invalid token key id '${keyId}'.")
+            keyIds[i] = keyId
+            macs[i] = mac(Base64.decoder.decode(secret))
+            i++
+        }
+        this.clockSkew = clockSkew
+        this.maxLifetime = maxLifetime
+        this.rejected = metrics.counter("auth_tokens_rejected")
+    }
+
+    private static Mac mac(byte[] secret) {
+        Mac mac = Mac.getInstance(ALGORITHM)
+        mac.init(new SecretKeySpec(secret, ALGORITHM))
+        return mac
+    }
+
+    /**
+     * @param expires seconds since the epoch
+     * @return token of the user, signed with the given key
+     */
+    public static String sign(String keyId, byte[] secret, String user, long expires) {
+        String payload = keyId + "." + expires + "."
+        byte[] signature = mac(secret).doFinal((payload + user).getBytes(StandardCharsets.UTF_8))
+        return payload + Base64.urlEncoder.withoutPadding().encodeToString(signature)
+    }
+
+    @Override
+    void isAuthenticated(String user, String token, Handler<AsyncResult<Boolean>> handler) {
+        if (verify(user, token, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()))) {
+            handler.handle(AUTHENTICATED)
+        } else {
+            rejected.increment()
+            handler.handle(NOT_AUTHENTICATED)
+        }
+    }
+
+    /**
+     * @param now seconds since the epoch
+     * @return true if the token of the user is validly signed and not expired
+     */
+    public boolean verify(String user, String token, long now) {
+        if (user == null || token == null)
+            return false
+
+        int keyEnd = token.indexOf('.')
+        int expiryEnd = keyEnd < 0 ? -1 : token.indexOf('.', keyEnd + 1)
+        if (expiryEnd < 0 || token.length() - expiryEnd - 1 != ENCODED_SIGNATURE_LENGTH)
+            return false
+
+        Mac mac = macOf(token, keyEnd)
+        long expires = parseExpiry(token, keyEnd + 1, expiryEnd)
+        if (mac == null || expires < 0 || expires + clockSkew < now || expires > now + maxLifetime)
+            return false
+        if (!decodeSignature(token, expiryEnd + 1))
+            return false
+
+        // the signed payload is the token up to its signature, followed by the user
+        int length = writeAscii(token, 0, expiryEnd + 1, input, 0)
+        length = length < 0 ? -1 : writeAscii(user, 0, user.length(), input, length)
+        if (length >= 0) {
+            mac.update(input, 0, length)
+        } else {
+            mac.update(token.substring(0, expiryEnd + 1).getBytes(StandardCharsets.UTF_8))
+            mac.update(user.getBytes(StandardCharsets.UTF_8))
+        }
+        mac.doFinal(expected, 0)
+
+        // constant time, all bytes are compared whatever the first difference
+        int difference = 0
+        for (int i = 0; i < SIGNATURE_LENGTH; i++)
+            difference |= expected[i] ^ actual[i]
+        return difference == 0
+    }
+
+    private Mac macOf(String token, int keyEnd) {
+        for (int i = 0; i < keyIds.length; i++) {
+            if (keyIds[i].length() == keyEnd && token.regionMatches(0, keyIds[i], 0, keyEnd))
+                return macs[i]
+        }
+        return null
+    }
+
+    /**
+     * @return the expiry, or -1 if it isn't a number
+     */
+    private static long parseExpiry(String token, int start, int end) {
+        if (end - start < 1 || end - start > 12)
+            return -1
+        long expires = 0
+        for (int i = start; i < end; i++) {
+            char c = token.charAt(i)
+            if (c < ('0' as char) || c > ('9' as char))
+                return -1
+            expires = expires * 10 + (c - ('0' as char))
+        }
+        return expires
+    }
+
+    /**
+     * decodes the base64url signature starting at {@code start} into {@link #actual}
+     */
+    private boolean decodeSignature(String token, int start) {
+        int bits = 0
+        int bitCount = 0
+        int written = 0
+        for (int i = start; i < token.length(); i++) {
+            char c = token.charAt(i)
+            int value = c < 128 ? BASE64URL[(int) c] : -1
+            if (value < 0)
+                return false
+            bits = (bits << 6) | value
+            bitCount += 6
+            if (bitCount >= 8) {
+                bitCount -= 8
+                actual[written++] = (byte) (bits >> bitCount)
+                bits &= (1 << bitCount) - 1
+            }
+        }
+        return written == SIGNATURE_LENGTH
+    }
+
+    /**
+     * @return the length of the output after the ASCII characters were appended, or -1 if a
+     *         character isn't ASCII or the output is too short
+     */
+    private static int writeAscii(String value, int start, int end, byte[] output, int offset) {
+        if (offset + end - start > output.length)
+            return -1
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i)
+            if (c >= 128)
+                return -1
+            output[offset++] = (byte) c
+        }
+        return offset
+    }
+}
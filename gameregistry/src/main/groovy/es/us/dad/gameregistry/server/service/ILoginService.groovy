@@ -1,9 +1,13 @@
 package es.us.dad.gameregistry.server.service
 
-import com.darylteo.vertx.promises.groovy.Promise
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
 
 interface ILoginService {
 
-    Promise<Boolean> isAuthenticated(String user, String token)
+    /**
+     * calls {@code handler} with true if the token of the user is valid, on the path of every request
+     */
+    void isAuthenticated(String user, String token, Handler<AsyncResult<Boolean>> handler)
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package es.us.dad.gameregistry.server.service
+
+interface ISessionIdGenerator {
+
+    /**
+     * @return id of a new session, called from the event loops on every session start
+     */
+    UUID next()
+
+}
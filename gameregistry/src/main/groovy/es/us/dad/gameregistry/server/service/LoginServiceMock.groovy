@@ -1,21 +1,26 @@
 package es.us.dad.gameregistry.server.service
 
-import com.darylteo.vertx.promises.groovy.Promise
+import groovy.transform.CompileStatic
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
+import org.vertx.java.core.impl.DefaultFutureResult
 
+@CompileStatic
 class LoginServiceMock implements ILoginService {
 
-    @Override
-    Promise<Boolean> isAuthenticated(String user, String token) {
-        final Promise<Boolean> p = new Promise()
+    // the results are never changed, so every request can share them
+    private static final AsyncResult<Boolean> AUTHENTICATED = new DefaultFutureResult<Boolean>(true)
+    private static final AsyncResult<Boolean> NOT_AUTHENTICATED = new DefaultFutureResult<Boolean>(false)
 
+    @Override
+    void isAuthenticated(String user, String token, Handler<AsyncResult<Boolean>> handler) {
         if (user == null || token == null) {
-            p.fulfill(false)
+            handler.handle(NOT_AUTHENTICATED)
+            return
         }
 
         // TODO: REST call to login component
-        p.fulfill(true)
-
-        return p
+        handler.handle(AUTHENTICATED)
     }
 
 }
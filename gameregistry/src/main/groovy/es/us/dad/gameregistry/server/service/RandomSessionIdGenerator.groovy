@@ -0,0 +1,17 @@
+package es.us.dad.gameregistry.server.service
+
+import groovy.transform.CompileStatic
+
+/**
+ * Random (version 4) ids. {@link UUID#randomUUID} draws from a {@code SecureRandom} shared by all
+ * the threads, so the ids are unpredictable but the event loops contend on it, and consecutive
+ * sessions are scattered over the whole index.
+ */
+@CompileStatic
+class RandomSessionIdGenerator implements ISessionIdGenerator {
+
+    @Override
+    UUID next() {
+        return UUID.randomUUID()
+    }
+}
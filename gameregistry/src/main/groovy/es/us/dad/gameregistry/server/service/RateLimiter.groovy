@@ -0,0 +1,137 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Token buckets which limit the request rate of every user, overall and on selected routes.
+ *
+ * A bucket holds up to {@code burst} tokens and is refilled with {@code rate} tokens per second; a
+ * request takes a token from the bucket of its user and from the bucket of its user and route, if
+ * the route is limited. A bucket which has been idle long enough to be full again is dropped, and
+ * at most {@code maxBuckets} buckets are kept (least recently used first out), so memory stays
+ * bounded however many users show up. Only used from the event loop of the rest server.
+ */
+@CompileStatic
+class RateLimiter {
+
+    static class Limit {
+        final double rate
+        final double burst
+
+        /**
+         * @param rate tokens per second, more than 0
+         * @param burst maximum number of tokens, at least 1
+         */
+        Limit(double rate, double burst) {
+            if (!(rate > 0))
+                throw new IllegalArgumentException("The rate of a rate limit must be greater than 0, not ${rate}.")
+            if (!(burst >= 1))
+                throw new IllegalArgumentException("The burst of a rate limit must be at least 1, not ${burst}.")
+            this.rate = rate
+            this.burst = burst
+        }
+    }
+
+    private static class Bucket {
+        final Limit limit
+        double tokens
+        long updated
+
+        Bucket(Limit limit, long now) {
+            this.limit = limit
+            this.tokens = limit.burst
+            this.updated = now
+        }
+
+        void refill(long now) {
+            tokens = Math.min(limit.burst, tokens + (now - updated) * limit.rate / 1000000000.0d)
+            updated = now
+        }
+
+        boolean isFull(long now) {
+            return tokens + (now - updated) * limit.rate / 1000000000.0d >= limit.burst
+        }
+
+        /**
+         * @return milliseconds until the bucket holds a token
+         */
+        long waitMillis() {
+            return (long) Math.ceil((1.0d - tokens) * 1000.0d / limit.rate)
+        }
+    }
+
+    private final Limit userLimit
+    private final Map<String, Limit> routeLimits
+    private final LinkedHashMap<String, Bucket> buckets
+
+    private final LongAdder limited
+
+    /**
+     * @param userLimit limit of all the requests of a user, or {@code null}
+     * @param routeLimits limits of the requests of a user on a route ("POST /api/v1/sessions")
+     * @param maxBuckets maximum number of buckets kept
+     */
+    public RateLimiter(Limit userLimit, Map<String, Limit> routeLimits, int maxBuckets, MetricsRegistry metrics) {
+        this.userLimit = userLimit
+        this.routeLimits = new HashMap<String, Limit>(routeLimits)
+        this.buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                return size() > maxBuckets
+            }
+        }
+
+        this.limited = metrics.counter("rate_limited_requests")
+        LinkedHashMap<String, Bucket> buckets = this.buckets
+        metrics.gauge("rate_limiter_buckets", { (Number) buckets.size() } as Closure<Number>)
+    }
+
+    /**
+     * takes a token for a request of {@code user} on {@code route} if every bucket of the request has one
+     * @param route method and path pattern of the route ("POST /api/v1/sessions"), or {@code null}
+     * @return 0 if the request is allowed, otherwise milliseconds until it would be
+     */
+    public long acquire(String user, String route) {
+        long now = System.nanoTime()
+        evictIdle(now)
+
+        Bucket userBucket = userLimit != null ? bucket(user, userLimit, now) : null
+        Limit routeLimit = route != null ? routeLimits.get(route) : null
+        // header values can't contain line breaks, so the key of a route bucket is never the name of a user
+        Bucket routeBucket = routeLimit != null ? bucket(user + "\n" + route, routeLimit, now) : null
+
+        long wait = Math.max(userBucket != null && userBucket.tokens < 1 ? userBucket.waitMillis() : 0,
+                             routeBucket != null && routeBucket.tokens < 1 ? routeBucket.waitMillis() : 0)
+        if (wait > 0) {
+            limited.increment()
+            return wait
+        }
+
+        if (userBucket != null)
+            userBucket.tokens -= 1
+        if (routeBucket != null)
+            routeBucket.tokens -= 1
+        return 0
+    }
+
+    private Bucket bucket(String key, Limit limit, long now) {
+        Bucket bucket = buckets.get(key)
+        if (bucket == null) {
+            bucket = new Bucket(limit, now)
+            buckets.put(key, bucket)
+        } else {
+            bucket.refill(now)
+        }
+        return bucket
+    }
+
+    // the least recently used buckets come first, stop at the first one which is still in use
+    private void evictIdle(long now) {
+        Iterator<Bucket> it = buckets.values().iterator()
+        while (it.hasNext() && it.next().isFull(now))
+            it.remove()
+    }
+}
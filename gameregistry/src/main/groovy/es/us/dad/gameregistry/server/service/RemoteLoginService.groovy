@@ -0,0 +1,215 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.server.exception.ServiceUnavailableException
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import groovy.json.JsonOutput
+import groovy.transform.CompileStatic
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.buffer.Buffer
+import org.vertx.groovy.core.http.HttpClient
+import org.vertx.groovy.core.http.HttpClientRequest
+import org.vertx.groovy.core.http.HttpClientResponse
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
+import org.vertx.java.core.impl.DefaultFutureResult
+import org.vertx.java.core.json.DecodeException
+import org.vertx.java.core.json.JsonArray
+import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Validates tokens with the login component, over a pool of keep-alive connections.
+ *
+ * Identical validations (same user and token) waiting for the same answer are merged, so a burst
+ * of requests of one user costs one validation. Different tokens are collected for up to
+ * {@code batchDelay} milliseconds, or until {@code maxBatch} are waiting, and sent in one request:
+ *
+ * <pre><code>
+ *  POST {path}  {"tokens": [{"user": "user1", "token": "..."}, ...]}
+ *  200          {"valid": [true, ...]}
+ * </code></pre>
+ *
+ * with one answer per token, in the same order. If the login component fails or doesn't answer
+ * within {@code timeout} milliseconds, the requests of the batch fail with a
+ * {@link ServiceUnavailableException}. Only used from the event loop of the rest server.
+ */
+@CompileStatic
+class RemoteLoginService implements ILoginService {
+
+    private static final AsyncResult<Boolean> AUTHENTICATED = new DefaultFutureResult<Boolean>(true)
+    private static final AsyncResult<Boolean> NOT_AUTHENTICATED = new DefaultFutureResult<Boolean>(false)
+
+    private final Vertx vertx
+    private final Logger logger
+    private final HttpClient client
+    private final String path
+    private final long batchDelay
+    private final int maxBatch
+    private final long timeout
+
+    // user and token -> handlers waiting for the validation, batched or in flight
+    private final Map<String, List<Handler<AsyncResult<Boolean>>>> waiting =
+            new HashMap<String, List<Handler<AsyncResult<Boolean>>>>()
+    private List<String> batchKeys = new ArrayList<String>()
+    private List<Map<String, String>> batchTokens = new ArrayList<Map<String, String>>()
+    private long batchTimer = -1
+
+    private final Histogram rtts
+    private final Histogram batchSizes
+    private final LongAdder coalesced
+    private final LongAdder failed
+
+    /**
+     * @param maxPoolSize connections kept open to the login component
+     * @param batchDelay milliseconds different tokens are collected before they are sent
+     * @param maxBatch a batch is sent right away once it holds this many tokens
+     * @param timeout milliseconds to wait for the login component
+     */
+    public RemoteLoginService(Vertx vertx, Logger logger, MetricsRegistry metrics, String host, int port, String path,
+                              int maxPoolSize, long batchDelay, int maxBatch, long timeout) {
+        this.vertx = vertx
+        this.logger = logger
+        this.client = vertx.createHttpClient().setHost(host).setPort(port).setKeepAlive(true).setMaxPoolSize(maxPoolSize)
+        this.path = path
+        this.batchDelay = batchDelay
+        this.maxBatch = maxBatch
+        this.timeout = timeout
+
+        this.rtts = metrics.histogram("login_rtt_ms")
+        this.batchSizes = metrics.histogram("login_batch_size")
+        this.coalesced = metrics.counter("login_validations_coalesced")
+        this.failed = metrics.counter("login_validations_failed")
+        metrics.gauge("login_validations_waiting", { (Number) waiting.size() } as Closure<Number>)
+    }
+
+    @Override
+    void isAuthenticated(String user, String token, Handler<AsyncResult<Boolean>> handler) {
+        if (user == null || token == null) {
+            handler.handle(NOT_AUTHENTICATED)
+            return
+        }
+
+        String key = user + "\n" + token
+        List<Handler<AsyncResult<Boolean>>> handlers = waiting.get(key)
+        if (handlers != null) {
+            coalesced.increment()
+            handlers.add(handler)
+            return
+        }
+
+        handlers = new ArrayList<Handler<AsyncResult<Boolean>>>(1)
+        handlers.add(handler)
+        waiting.put(key, handlers)
+        batchKeys.add(key)
+        batchTokens.add([user: user, token: token])
+
+        if (batchKeys.size() >= maxBatch) {
+            if (batchTimer != -1)
+                vertx.cancelTimer(batchTimer)
+            flush()
+        } else if (batchTimer == -1) {
+            batchTimer = vertx.setTimer(batchDelay, { flush() })
+        }
+    }
+
+    public void close() {
+        client.close()
+    }
+
+    private void flush() {
+        batchTimer = -1
+        if (batchKeys.isEmpty())
+            return
+
+        List<String> keys = batchKeys
+        String body = JsonOutput.toJson([tokens: batchTokens])
+        batchKeys = new ArrayList<String>()
+        batchTokens = new ArrayList<Map<String, String>>()
+        batchSizes.record(keys.size())
+
+        Histogram rtts = this.rtts
+        Vertx vertx = this.vertx
+        long timeout = this.timeout
+        long started = System.nanoTime()
+        boolean[] done = [false] as boolean[]
+        // the request timeout only covers the wait for the response headers, this one the whole batch
+        long timer = vertx.setTimer(timeout, {
+            if (done[0])
+                return
+            done[0] = true
+            fail(keys, "The login service didn't answer within ${timeout} ms.")
+        })
+        HttpClientRequest request = client.post(path, { HttpClientResponse response ->
+            response.bodyHandler { Buffer buffer ->
+                if (done[0])
+                    return
+                done[0] = true
+                vertx.cancelTimer(timer)
+                rtts.record((System.nanoTime() - started).intdiv(1000000) as long)
+                answer(keys, response.statusCode, buffer)
+            }
+            response.exceptionHandler { Throwable ex ->
+                if (done[0])
+                    return
+                done[0] = true
+                vertx.cancelTimer(timer)
+                fail(keys, "The login service is unavailable: ${ex.message}")
+            }
+        })
+        request.exceptionHandler { Throwable ex ->
+            if (done[0])
+                return
+            done[0] = true
+            vertx.cancelTimer(timer)
+            fail(keys, "The login service is unavailable: ${ex.message}")
+        }
+        request.setTimeout(timeout)
+        request.putHeader("Content-Type", "application/json")
+        request.end(body)
+    }
+
+    private void answer(List<String> keys, int statusCode, Buffer buffer) {
+        if (statusCode != 200) {
+            fail(keys, "The login service answered with status ${statusCode}.")
+            return
+        }
+
+        JsonArray valid
+        try {
+            valid = new JsonObject(buffer.toString()).getArray("valid")
+        } catch (DecodeException ignored) {
+            valid = null
+        }
+        if (valid == null || valid.size() != keys.size()) {
+            fail(keys, "The login service sent an invalid answer.")
+            return
+        }
+
+        for (int i = 0; i < keys.size(); i++)
+            complete(keys[i], Boolean.TRUE == valid.get(i) ? AUTHENTICATED : NOT_AUTHENTICATED)
+    }
+
+    private void fail(List<String> keys, String message) {
+        logger.error(message)
+        ServiceUnavailableException ex = new ServiceUnavailableException(message, 1)
+        AsyncResult<Boolean> result = new DefaultFutureResult<Boolean>(ex)
+        for (String key : keys) {
+            failed.increment()
+            complete(key, result)
+        }
+    }
+
+    private void complete(String key, AsyncResult<Boolean> result) {
+        for (Handler<AsyncResult<Boolean>> handler : waiting.remove(key)) {
+            try {
+                handler.handle(result)
+            } catch (Exception ex) {
+                // the other requests waiting for the token are still answered
+                logger.error("Authenticated request failed: ${ex.message}", ex)
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.shared.domain.GameSession
+
+/**
+ * Per-node LRU cache of game sessions.
+ *
+ * A session only moves forward through its lifecycle (open, finished, deleted), which is used
+ * as its version. Invalidations remember the version a session has reached, so a cache fill
+ * which read older data (ie started before the invalidation, or read from a lagging secondary)
+ * is rejected instead of resurrecting the stale session.
+ *
+ * Entries expire after {@code ttl} milliseconds, which bounds the staleness of sessions whose
+ * invalidation got lost. Only used from the event loop of the rest server.
+ */
+class SessionCache {
+
+    public static final int VERSION_OPEN = 1
+    public static final int VERSION_FINISHED = 2
+    public static final int VERSION_DELETED = 3
+
+    private static class Entry {
+        final GameSession session
+        final long expires
+
+        Entry(GameSession session, long expires) {
+            this.session = session
+            this.expires = expires
+        }
+    }
+
+    private final int maxEntries
+    private final long ttl
+    private final LinkedHashMap<UUID, Entry> entries
+    // minimum version of recently invalidated sessions
+    private final LinkedHashMap<UUID, Integer> minVersions
+
+    /**
+     * @param maxEntries maximum number of cached sessions
+     * @param ttl milliseconds a session stays cached
+     */
+    public SessionCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries
+        this.ttl = ttl
+
+        this.entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > maxEntries
+            }
+        }
+        this.minVersions = new LinkedHashMap<UUID, Integer>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Integer> eldest) {
+                return size() > maxEntries
+            }
+        }
+    }
+
+    public static int versionOf(GameSession session) {
+        return session.finished ? VERSION_FINISHED : VERSION_OPEN
+    }
+
+    public int getMaxEntries() {
+        return maxEntries
+    }
+
+    public int size() {
+        return entries.size()
+    }
+
+    /**
+     * @return the cached session or {@code null}
+     */
+    public GameSession get(UUID id) {
+        Entry entry = entries.get(id)
+        if (entry == null)
+            return null
+
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(id)
+            return null
+        }
+        return entry.session
+    }
+
+    /**
+     * caches a session unless it was invalidated by a newer version meanwhile
+     * @return true if the session was cached
+     */
+    public boolean fill(GameSession session) {
+        Integer minVersion = minVersions.get(session.id)
+        if (minVersion != null && versionOf(session) < minVersion)
+            return false
+
+        entries.put(session.id, new Entry(session, System.currentTimeMillis() + ttl))
+        return true
+    }
+
+    /**
+     * drops a session which reached {@code version} from the cache
+     */
+    public void invalidate(UUID id, int version) {
+        entries.remove(id)
+
+        Integer minVersion = minVersions.get(id)
+        if (minVersion == null || minVersion < version)
+            minVersions.put(id, version)
+    }
+
+    public void invalidateAll() {
+        entries.clear()
+    }
+}
@@ -0,0 +1,203 @@
+package es.us.dad.gameregistry.server.service
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.metrics.Histogram
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Hashed timing wheel which expires open sessions once they are older than {@code maxAge}.
+ *
+ * The wheel has {@code wheelSize} slots, each covering {@code tickDuration} milliseconds; a
+ * session is put in the slot of its expiry time and carries how many more turns of the wheel it
+ * has to wait. Adding and removing sessions is O(1), every tick only looks at one slot.
+ *
+ * Sessions which came due are deleted in batches of at most {@code maxBatch}, one batch at a time.
+ * The delete only matches sessions which are still open, so sessions finished on another node
+ * are left alone. The wheel is rebuilt from the repository on {@link #start()}; sessions started
+ * on other nodes afterwards are not tracked and are left to the periodic cleanup.
+ *
+ * Only used from the event loop of the rest server.
+ */
+class SessionExpiryWheel {
+
+    private static class Entry {
+        UUID id
+        long deadline
+        long rounds
+        int slot
+        Entry prev
+        Entry next
+    }
+
+    private final Vertx vertx
+    private final Logger logger
+    private final ISessionRepository sessionRepository
+    private final CacheInvalidationBus invalidations
+    private final long maxAge
+    private final long tickDuration
+    private final int maxBatch
+
+    private final Entry[] slots
+    private final Map<UUID, Entry> entries = new HashMap<UUID, Entry>()
+    private final ArrayDeque<Entry> due = new ArrayDeque<Entry>()
+    private int cursor = 0
+    private long nextTick
+    private long timer = -1
+    private boolean expiring = false
+
+    private final Histogram lag
+    private final Histogram batchSizes
+    private final LongAdder expired
+
+    /**
+     * @param invalidations drops expired sessions from the caches, or {@code null}
+     * @param maxAge seconds an open session lives
+     * @param tickDuration milliseconds covered by a slot
+     * @param wheelSize number of slots
+     * @param maxBatch maximum number of sessions deleted at once
+     */
+    public SessionExpiryWheel(Vertx vertx, Logger logger, ISessionRepository sessionRepository,
+                              CacheInvalidationBus invalidations, MetricsRegistry metrics,
+                              long maxAge, long tickDuration, int wheelSize, int maxBatch) {
+        this.vertx = vertx
+        this.logger = logger
+        this.sessionRepository = sessionRepository
+        this.invalidations = invalidations
+        this.maxAge = maxAge
+        this.tickDuration = tickDuration
+        this.maxBatch = maxBatch
+        this.slots = new Entry[wheelSize]
+        this.nextTick = System.currentTimeMillis() + tickDuration
+
+        this.lag = metrics.histogram("session_expiry_lag_ms")
+        this.batchSizes = metrics.histogram("session_expiry_batch_size")
+        this.expired = metrics.counter("sessions_expired")
+        metrics.gauge("session_expiry_tracked", { entries.size() })
+    }
+
+    /**
+     * tracks all the open sessions of the repository and starts ticking
+     */
+    public Promise<Void> start() {
+        Promise<Void> p = new Promise<Void>()
+
+        sessionRepository.findOpen().then({ List<GameSession> sessions ->
+            sessions.each { add(it) }
+            logger.info("Session expiry wheel tracks ${sessions.size()} open sessions.")
+
+            timer = vertx.setPeriodic(tickDuration, { tick() })
+            p.fulfill(null)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    public void stop() {
+        if (timer != -1)
+            vertx.cancelTimer(timer)
+        timer = -1
+    }
+
+    public int size() {
+        return entries.size()
+    }
+
+    /**
+     * tracks an open session
+     */
+    public void add(GameSession session) {
+        remove(session.id)
+
+        Entry entry = new Entry(id: session.id, deadline: session.startMillis + maxAge * 1000)
+        // the slot is processed strictly after the deadline
+        long ticks = entry.deadline < nextTick ? 0 : (entry.deadline - nextTick).intdiv(tickDuration) + 1
+        entry.rounds = ticks.intdiv(slots.length) as long
+        entry.slot = (int) ((cursor + ticks) % slots.length)
+
+        entry.next = slots[entry.slot]
+        if (entry.next != null)
+            entry.next.prev = entry
+        slots[entry.slot] = entry
+        entries.put(entry.id, entry)
+    }
+
+    /**
+     * stops tracking a session (ie because it was finished or deleted)
+     */
+    public void remove(UUID id) {
+        Entry entry = entries.remove(id)
+        if (entry != null)
+            unlink(entry)
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null)
+            entry.prev.next = entry.next
+        else
+            slots[entry.slot] = entry.next
+        if (entry.next != null)
+            entry.next.prev = entry.prev
+        entry.prev = null
+        entry.next = null
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis()
+
+        // catch up if the timer fired late
+        while (nextTick <= now) {
+            Entry entry = slots[cursor]
+            while (entry != null) {
+                Entry next = entry.next
+                if (entry.rounds > 0) {
+                    entry.rounds--
+                } else {
+                    unlink(entry)
+                    entries.remove(entry.id)
+                    due.add(entry)
+                }
+                entry = next
+            }
+
+            cursor = (cursor + 1) % slots.length
+            nextTick += tickDuration
+        }
+
+        expireDue()
+    }
+
+    private void expireDue() {
+        if (expiring || due.isEmpty())
+            return
+
+        long now = System.currentTimeMillis()
+        List<UUID> batch = []
+        while (!due.isEmpty() && batch.size() < maxBatch) {
+            Entry entry = due.poll()
+            lag.record(now - entry.deadline)
+            batch.add(entry.id)
+        }
+        batchSizes.record(batch.size())
+
+        expiring = true
+        sessionRepository.expire(batch, maxAge).then({ Integer deleted ->
+            expired.add(deleted)
+            // rejects the fills of the expired, still open sessions which were read before the delete;
+            // a session finished in the meantime wasn't deleted and may still be cached
+            batch.each { UUID id -> invalidations?.invalidate(id, SessionCache.VERSION_FINISHED) }
+        }).fail({ Exception ex ->
+            logger.error("Could not expire ${batch.size()} sessions: ${ex.message}")
+        }).then({
+            expiring = false
+            expireDue()
+        })
+    }
+}
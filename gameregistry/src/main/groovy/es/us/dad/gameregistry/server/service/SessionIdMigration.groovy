@@ -0,0 +1,90 @@
+package es.us.dad.gameregistry.server.service
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.MongoLock
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import org.vertx.groovy.core.Vertx
+import org.vertx.java.core.logging.Logger
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Background job which rewrites the sessions stored with their id in {@code id} with their binary
+ * {@code _id}, see {@link MongoSessionRepository}. Started once with the node, it migrates at most
+ * {@code batchSize} sessions at once and waits {@code batchDelay} milliseconds between two batches,
+ * until none are left.
+ *
+ * Only the holder of the cluster lock migrates, the other nodes try again once its lease expired.
+ * When the job logged that it is done, {@code legacy_session_ids} can be turned off. Only used from
+ * the event loop of the rest server.
+ */
+class SessionIdMigration {
+
+    private final Vertx vertx
+    private final Logger logger
+    private final MongoSessionRepository sessionRepository
+    private final MongoLock lock
+    private final int batchSize
+    private final long batchDelay
+    private final long leaseTime
+
+    private long total = 0
+
+    private final LongAdder migrated
+
+    /**
+     * @param batchSize maximum number of sessions migrated at once
+     * @param batchDelay milliseconds between two batches
+     * @param leaseTime milliseconds the lock is held without being renewed
+     */
+    public SessionIdMigration(Vertx vertx, Logger logger, MongoSessionRepository sessionRepository, MongoLock lock,
+                              MetricsRegistry metrics, int batchSize, long batchDelay, long leaseTime) {
+        this.vertx = vertx
+        this.logger = logger
+        this.sessionRepository = sessionRepository
+        this.lock = lock
+        this.batchSize = batchSize
+        this.batchDelay = batchDelay
+        this.leaseTime = leaseTime
+
+        this.migrated = metrics.counter("sessions_migrated")
+    }
+
+    public void start() {
+        nextBatch()
+    }
+
+    private void nextBatch() {
+        lock.acquire(leaseTime).then({ Boolean held ->
+            if (held) {
+                migrateBatch()
+            } else {
+                // the migration runs on another node, take over if it stops before it is done
+                vertx.setTimer(leaseTime, { nextBatch() })
+            }
+        }).fail({ Exception ex ->
+            retry("could not acquire the lock: ${ex.message}")
+        })
+    }
+
+    private void migrateBatch() {
+        sessionRepository.migrateLegacySessions(batchSize).then({ Integer count ->
+            migrated.add(count)
+            total += count
+
+            if (count > 0) {
+                vertx.setTimer(batchDelay, { nextBatch() })
+            } else {
+                logger.info("Session id migration done, ${total} sessions migrated by this node.")
+                lock.release()
+            }
+        }).fail({ Exception ex ->
+            retry("failed: ${ex.message}")
+        })
+    }
+
+    private void retry(String reason) {
+        logger.error("Session id migration ${reason}, retrying in ${leaseTime} ms.")
+        vertx.setTimer(leaseTime, { nextBatch() })
+    }
+}
@@ -2,106 +2,266 @@ package es.us.dad.gameregistry.server.service
 
 import com.darylteo.vertx.promises.groovy.Promise
 import es.us.dad.gameregistry.server.exception.ForbiddenException
+import es.us.dad.gameregistry.server.metrics.ServerTiming
+import es.us.dad.gameregistry.server.util.Async
 import es.us.dad.gameregistry.shared.domain.GameSession
 import es.us.dad.gameregistry.server.repository.ISessionRepository
+import groovy.transform.CompileStatic
 import org.vertx.groovy.core.Vertx
-import org.vertx.java.core.json.JsonObject
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
 import org.vertx.java.core.logging.Logger
 
+/**
+ * Compiled statically, it is on the path of every request. The controllers call the variants taking
+ * a handler (see {@link Async}), the ones returning a promise are for the other callers. {@code then}
+ * can't tell the type of the promise a callback returns, so chained promises are cast to the type they
+ * resolve to. The fields used by callbacks are copied into local variables first, groovy 2.3 reads
+ * fields dynamically from closures even in statically compiled classes.
+ */
+@CompileStatic
 class SessionService {
 
     private final Vertx vertx
     private final Logger logger
     private final ISessionRepository sessionRepository
+    private final SessionCache cache
+    private final CacheInvalidationBus invalidations
+    private final SessionExpiryWheel expiryWheel
+    private final ISessionIdGenerator idGenerator
 
     public SessionService(Vertx vertx, Logger logger, ISessionRepository sessionRepository) {
+        this(vertx, logger, sessionRepository, null, null)
+    }
+
+    public SessionService(Vertx vertx, Logger logger, ISessionRepository sessionRepository,
+                          SessionCache cache, CacheInvalidationBus invalidations) {
+        this(vertx, logger, sessionRepository, cache, invalidations, null)
+    }
+
+    /**
+     * @param cache cache for {@link #getSession}, or {@code null} to disable caching
+     * @param invalidations publishes the mutations to the caches of the other nodes (required if cache is set)
+     * @param expiryWheel expires the sessions started on this node, or {@code null} to rely on {@link #cleanup}
+     */
+    public SessionService(Vertx vertx, Logger logger, ISessionRepository sessionRepository,
+                          SessionCache cache, CacheInvalidationBus invalidations, SessionExpiryWheel expiryWheel) {
+        this(vertx, logger, sessionRepository, cache, invalidations, expiryWheel, new RandomSessionIdGenerator())
+    }
+
+    /**
+     * @param idGenerator generates the ids of the new sessions
+     */
+    public SessionService(Vertx vertx, Logger logger, ISessionRepository sessionRepository,
+                          SessionCache cache, CacheInvalidationBus invalidations, SessionExpiryWheel expiryWheel,
+                          ISessionIdGenerator idGenerator) {
         this.vertx = vertx
         this.logger = logger
         this.sessionRepository = sessionRepository
+        this.cache = cache
+        this.invalidations = invalidations
+        this.expiryWheel = expiryWheel
+        this.idGenerator = idGenerator
+    }
+
+    /**
+     * @return handler which adds the duration of a repository call to the timings of the request and
+     *         passes its result on to {@code handler}
+     * @param timing timings of the request, or {@code null}
+     * @param started {@link System#nanoTime()} before the call
+     */
+    public static <T> Handler<AsyncResult<T>> timed(ServerTiming timing, String phase, long started,
+                                                    Handler<AsyncResult<T>> handler) {
+        // public, groovy 2.3 calls protected methods from closures dynamically and copies T into the
+        // signature of the accessor of a private one (as it would for a closure parameter typed as T),
+        // which breaks the classes compiled against it
+        if (timing == null)
+            return handler
+
+        return { AsyncResult<T> result ->
+            timing.add(phase, started)
+            handler.handle(result)
+        } as Handler<AsyncResult<T>>
     }
 
     /**
      * retrieves a game session
      * @param id session id
-     * @return game session or {@code null} if game session could not be found
+     * @param timing timings of the request, or {@code null}
+     * @return game session, the promise is rejected if it could not be found
+     */
+    public Promise<GameSession> getSession(UUID id, ServerTiming timing = null) {
+        Promise<GameSession> p = new Promise<GameSession>()
+        getSession(id, timing, Async.handlerOf(p))
+        return p
+    }
+
+    /**
+     * like {@link #getSession(UUID, ServerTiming)}, but without a promise
      */
-    public Promise<GameSession> getSession(UUID id) {
-        return sessionRepository.findById(id)
+    public void getSession(UUID id, ServerTiming timing, Handler<AsyncResult<GameSession>> handler) {
+        if (cache == null) {
+            Async.whenDone(sessionRepository.findById(id), timed(timing, "db_find", System.nanoTime(), handler))
+            return
+        }
+
+        SessionCache cache = this.cache
+        GameSession cached = cache.get(id)
+        if (cached != null) {
+            Async.succeed(handler, cached)
+            return
+        }
+
+        Async.whenDone(sessionRepository.findById(id), timed(timing, "db_find", System.nanoTime(), { AsyncResult<GameSession> found ->
+            if (found.succeeded())
+                cache.fill(found.result())
+            handler.handle(found)
+        } as Handler<AsyncResult<GameSession>>))
+    }
+
+    public Promise<List<GameSession>> findSessions(UUID id, String user, ServerTiming timing = null) {
+        Promise<List<GameSession>> p = new Promise<List<GameSession>>()
+        findSessions(id, user, timing, Async.handlerOf(p))
+        return p
     }
 
-    public Promise<List<GameSession>> findSessions(UUID id, String user) {
-        return sessionRepository.find(id, user)
+    public void findSessions(UUID id, String user, ServerTiming timing, Handler<AsyncResult<List<GameSession>>> handler) {
+        findSessions(id, user, null, timing, handler)
+    }
+
+    /**
+     * @param fields fields of the sessions to read, or {@code null} for all of them; the others are left unset
+     */
+    public Promise<List<GameSession>> findSessions(UUID id, String user, Collection<String> fields, ServerTiming timing) {
+        Promise<List<GameSession>> p = new Promise<List<GameSession>>()
+        findSessions(id, user, fields, timing, Async.handlerOf(p))
+        return p
+    }
+
+    public void findSessions(UUID id, String user, Collection<String> fields, ServerTiming timing,
+                             Handler<AsyncResult<List<GameSession>>> handler) {
+        Async.whenDone(sessionRepository.find(id, user, fields), timed(timing, "db_find", System.nanoTime(), handler))
     }
 
     /**
      * initializes a new game session
      * @return new game session
      */
-    public Promise<GameSession> startSession(String user, String game) {
+    public Promise<GameSession> startSession(String user, String game, ServerTiming timing = null) {
+        Promise<GameSession> p = new Promise<GameSession>()
+        startSession(user, game, timing, Async.handlerOf(p))
+        return p
+    }
+
+    public void startSession(String user, String game, ServerTiming timing, Handler<AsyncResult<GameSession>> handler) {
+        SessionCache cache = this.cache
+        SessionExpiryWheel expiryWheel = this.expiryWheel
+
         GameSession session = new GameSession()
-        session.setId(UUID.randomUUID())
+        session.setId(idGenerator.next())
         session.setUser(user)
         session.setGame(game)
-        session.setStart(new Date())
+        session.setStartMillis(System.currentTimeMillis())
 
-        return sessionRepository.create(session)
+        Async.whenDone(sessionRepository.create(session), timed(timing, "db_create", System.nanoTime(), { AsyncResult<GameSession> created ->
+            if (created.succeeded()) {
+                cache?.fill(created.result())
+                expiryWheel?.add(created.result())
+            }
+            handler.handle(created)
+        } as Handler<AsyncResult<GameSession>>))
     }
 
     /**
      * finishes a game session: sets end date
      * @param user current user
      * @param id session id
-     * @return updated game session or {@code null} if game session couldn't be found
+     * @param timing timings of the request, or {@code null}
+     * @return updated game session, the promise is rejected if it couldn't be found
      */
-    public Promise<GameSession> finishSession(String user, UUID id, Map<String,Object> result) {
-        Promise<GameSession> p = new Promise()
+    public Promise<GameSession> finishSession(String user, UUID id, Map<String,Object> result, ServerTiming timing = null) {
+        Promise<GameSession> p = new Promise<GameSession>()
+        finishSession(user, id, result, timing, Async.handlerOf(p))
+        return p
+    }
 
-        sessionRepository.findById(id).then({ GameSession session ->
-            if (!session.user.equals(user))
-                throw new ForbiddenException("Only the creator of the GameSession can mark the GameSession as finished.")
+    public void finishSession(String user, UUID id, Map<String,Object> result, ServerTiming timing,
+                              Handler<AsyncResult<GameSession>> handler) {
+        ISessionRepository sessionRepository = this.sessionRepository
+        CacheInvalidationBus invalidations = this.invalidations
+        SessionExpiryWheel expiryWheel = this.expiryWheel
 
-            session.end = new Date()
-            session.result = result
-            return sessionRepository.update(session)
-        }).then({ GameSession session ->
-            p.fulfill(session)
-        }).fail({ Exception ex ->
-            p.reject(ex)
-        })
-        // last 2 closures shouldn't be necessary, but there is some problem with the generic type of the Promise.
+        Async.whenDone(sessionRepository.findById(id), timed(timing, "db_find", System.nanoTime(), { AsyncResult<GameSession> found ->
+            if (found.failed()) {
+                handler.handle(found)
+                return
+            }
+            GameSession session = found.result()
+            if (!session.user.equals(user)) {
+                Async.fail(handler, new ForbiddenException("Only the creator of the GameSession can mark the GameSession as finished."))
+                return
+            }
 
-        return p
+            session.setEndMillis(System.currentTimeMillis())
+            session.result = result
+            Async.whenDone(sessionRepository.update(session), timed(timing, "db_update", System.nanoTime(), { AsyncResult<GameSession> updated ->
+                if (updated.succeeded()) {
+                    invalidations?.invalidate(id, SessionCache.VERSION_FINISHED)
+                    expiryWheel?.remove(id)
+                }
+                handler.handle(updated)
+            } as Handler<AsyncResult<GameSession>>))
+        } as Handler<AsyncResult<GameSession>>))
     }
 
     /**
      * deletes a game session
      * @param user current user
      * @param id session id
-     * @return true if the session is found and deleted, false otherwise
+     * @param timing timings of the request, or {@code null}
+     * @return the promise is rejected if the session couldn't be found or deleted
      */
-    public Promise<Void> deleteSession(String user, UUID id) {
-        Promise<Void> p = new Promise()
-
-        sessionRepository.findById(id).then({ GameSession session ->
-            if (!session.user.equals(user))
-                throw new ForbiddenException("Only the creator of the GameSession can delete the GameSession.")
-            return sessionRepository.delete(id)
-        }).then({
-            p.fulfill(null)
-        }).fail({ Exception ex ->
-            p.reject(ex)
-        })
-        // last 2 closures shouldn't be necessary, but there is some problem with the generic type of the Promise.
-
+    public Promise<Void> deleteSession(String user, UUID id, ServerTiming timing = null) {
+        Promise<Void> p = new Promise<Void>()
+        deleteSession(user, id, timing, Async.handlerOf(p))
         return p
     }
 
+    public void deleteSession(String user, UUID id, ServerTiming timing, Handler<AsyncResult<Void>> handler) {
+        ISessionRepository sessionRepository = this.sessionRepository
+        CacheInvalidationBus invalidations = this.invalidations
+        SessionExpiryWheel expiryWheel = this.expiryWheel
+
+        Async.whenDone(sessionRepository.findById(id), timed(timing, "db_find", System.nanoTime(), { AsyncResult<GameSession> found ->
+            if (found.failed()) {
+                Async.fail(handler, found.cause())
+                return
+            }
+            if (!found.result().user.equals(user)) {
+                Async.fail(handler, new ForbiddenException("Only the creator of the GameSession can delete the GameSession."))
+                return
+            }
+
+            Async.whenDone(sessionRepository.delete(id, user), timed(timing, "db_delete", System.nanoTime(), { AsyncResult<Void> deleted ->
+                if (deleted.succeeded()) {
+                    invalidations?.invalidate(id, SessionCache.VERSION_DELETED)
+                    expiryWheel?.remove(id)
+                }
+                handler.handle(deleted)
+            } as Handler<AsyncResult<Void>>))
+        } as Handler<AsyncResult<GameSession>>))
+    }
+
     /**
      * deletes all sessions which are open longer than maxAge
      * @param maxAge maximum age in seconds
      */
     public Promise<Void> cleanup(long maxAge) {
-        return sessionRepository.cleanup(maxAge)
+        CacheInvalidationBus invalidations = this.invalidations
+        return (Promise<Void>) sessionRepository.cleanup(maxAge).then({
+            invalidations?.invalidateAll()
+            return null
+        })
     }
 
 }
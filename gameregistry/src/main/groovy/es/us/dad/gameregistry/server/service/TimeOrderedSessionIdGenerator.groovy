@@ -0,0 +1,67 @@
+package es.us.dad.gameregistry.server.service
+
+import groovy.transform.CompileStatic
+
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Time-ordered (version 7) ids: the milliseconds since the epoch in the first 48 bits, followed by
+ * a 12 bits counter and 62 random bits. Sessions started around the same time get neighbouring ids,
+ * so new sessions are inserted at the end of the index instead of anywhere in it, and they still
+ * are valid UUIDs for the clients and the routes.
+ *
+ * Every thread keeps its last timestamp and counter, and draws from {@link ThreadLocalRandom}, so
+ * generating an id never waits for another thread. The ids of a thread are strictly increasing: the
+ * counter starts at a random value below 2048 every millisecond and is incremented for the next
+ * ids of the same millisecond; if it overflows, or the clock goes back, the timestamp of the last id
+ * is kept and incremented instead. The ids aren't meant to be unguessable, the start of a session
+ * can be read from its id.
+ */
+@CompileStatic
+class TimeOrderedSessionIdGenerator implements ISessionIdGenerator {
+
+    private static final long VERSION = 0x7000L
+    private static final long VARIANT = 0x8000000000000000L
+    private static final int MAX_COUNTER = 0xFFF
+    private static final int COUNTER_START_BOUND = 0x800
+
+    // millis and counter of the last id generated by the thread
+    private final ThreadLocal<long[]> last = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2]
+        }
+    }
+
+    @Override
+    UUID next() {
+        long[] state = last.get()
+        ThreadLocalRandom random = ThreadLocalRandom.current()
+        long now = System.currentTimeMillis()
+        long millis = state[0]
+        long counter
+        if (now > millis) {
+            millis = now
+            counter = random.nextInt(COUNTER_START_BOUND)
+        } else {
+            counter = state[1] + 1
+            if (counter > MAX_COUNTER) {
+                millis++
+                counter = 0
+            }
+        }
+        state[0] = millis
+        state[1] = counter
+
+        long mostSigBits = (millis << 16) | VERSION | counter
+        long leastSigBits = VARIANT | (random.nextLong() >>> 2)
+        return new UUID(mostSigBits, leastSigBits)
+    }
+
+    /**
+     * @return milliseconds since the epoch when the session of a time-ordered id started
+     */
+    public static long millisOf(UUID id) {
+        return id.mostSignificantBits >>> 16
+    }
+}
@@ -0,0 +1,177 @@
+package es.us.dad.gameregistry.server.service
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.metrics.RequestTracker
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.shared.GameRegistryConstants
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.Vertx
+import org.vertx.groovy.core.http.HttpClient
+import org.vertx.groovy.core.http.HttpClientResponse
+import org.vertx.java.core.logging.Logger
+
+/**
+ * Warms up a rest server after it started listening and before it reports to be ready.
+ *
+ * <ol>
+ *     <li>opens {@code connections} connections to the mongo-persistor with concurrent queries</li>
+ *     <li>preloads the most recently started open sessions into the session cache, if any</li>
+ *     <li>sends {@code requests} read-only requests to the hot routes of the server itself, so
+ *     their code paths are loaded and compiled before real traffic arrives</li>
+ * </ol>
+ *
+ * A failing step is logged and doesn't keep the server from becoming ready, and neither does a
+ * step which doesn't finish within {@code timeout} milliseconds (ie the persistor isn't up yet).
+ */
+class WarmUp {
+
+    private static final String WARM_UP_USER = "gameregistry-warmup"
+
+    private final Vertx vertx
+    private final Logger logger
+    private final ISessionRepository sessionRepository
+    private final SessionCache cache
+    private final String host
+    private final int port
+    private final int connections
+    private final int requests
+    private final long timeout
+    private final String key
+
+    private boolean ready = false
+
+    /**
+     * @param cache cache to preload, or {@code null}
+     * @param host host the server listens on
+     * @param port port the server listens on
+     * @param connections number of concurrent queries and requests
+     * @param requests number of requests sent to the server
+     * @param timeout milliseconds after which the server is ready even if the warm-up didn't finish
+     * @param key warm-up key of the server's {@link RequestTracker}, so the requests aren't authenticated,
+     *            rate limited, captured nor counted in the route metrics
+     */
+    public WarmUp(Vertx vertx, Logger logger, ISessionRepository sessionRepository, SessionCache cache,
+                  String host, int port, int connections, int requests, long timeout, String key) {
+        this.vertx = vertx
+        this.logger = logger
+        this.sessionRepository = sessionRepository
+        this.cache = cache
+        this.host = host == "0.0.0.0" ? "localhost" : host
+        this.port = port
+        this.connections = Math.max(1, connections)
+        this.requests = requests
+        this.timeout = timeout
+        this.key = key
+    }
+
+    public boolean isReady() {
+        return ready
+    }
+
+    public Promise<Void> run() {
+        Promise<Void> p = new Promise<Void>()
+        long started = System.currentTimeMillis()
+
+        long timer = vertx.setTimer(timeout) {
+            if (ready)
+                return
+            ready = true
+            logger.warn("Warm-up didn't finish within ${timeout} ms, the server is ready anyway.")
+            p.fulfill(null)
+        }
+        connect().then({
+            return preload()
+        }).then({
+            return exercise()
+        }).fail({ Exception ex ->
+            logger.warn("Warm-up failed: ${ex.message}")
+        }).then({
+            vertx.cancelTimer(timer)
+            if (ready)
+                return
+            ready = true
+            logger.info("Warm-up finished in ${System.currentTimeMillis() - started} ms.")
+            p.fulfill(null)
+        })
+
+        return p
+    }
+
+    private Promise<Void> connect() {
+        Promise<Void> p = new Promise<Void>()
+        int pending = connections
+
+        connections.times {
+            // looking up a random id is cheap, but needs a connection of its own when run concurrently
+            sessionRepository.find(UUID.randomUUID(), null).then({
+                if (--pending == 0)
+                    p.fulfill(null)
+            }).fail({ Exception ex ->
+                p.reject(ex)
+            })
+        }
+
+        return p
+    }
+
+    private Promise<Void> preload() {
+        Promise<Void> p = new Promise<Void>()
+        if (cache == null) {
+            p.fulfill(null)
+            return p
+        }
+
+        sessionRepository.findOpen().then({ List<GameSession> sessions ->
+            List<GameSession> recent = sessions.sort(false) { -it.startMillis }.take(cache.maxEntries)
+            // oldest first, so the most recently started sessions are the most recently used entries
+            recent.reverse().each { cache.fill(it) }
+            logger.info("Warm-up preloaded ${recent.size()} open sessions into the session cache.")
+            p.fulfill(null)
+        }).fail({ Exception ex ->
+            p.reject(ex)
+        })
+
+        return p
+    }
+
+    private Promise<Void> exercise() {
+        Promise<Void> p = new Promise<Void>()
+        if (requests <= 0) {
+            p.fulfill(null)
+            return p
+        }
+
+        HttpClient client = vertx.createHttpClient().setHost(host).setPort(port).setKeepAlive(true)
+        List<String> uris = ["/api/v1/sessions/${UUID.randomUUID()}".toString(),
+                             "/api/v1/sessions?user=${WARM_UP_USER}".toString(),
+                             "/metrics"]
+        int sent = 0
+        int running = connections
+
+        Closure next
+        next = {
+            // stops once the server became ready, the warm-up timed out
+            if (sent >= requests || ready) {
+                if (--running == 0) {
+                    client.close()
+                    p.fulfill(null)
+                }
+                return
+            }
+
+            String uri = uris[sent++ % uris.size()]
+            client.get(uri, { HttpClientResponse response ->
+                response.bodyHandler { next() }
+            }).putHeader(GameRegistryConstants.GAMEREGISTRY_USER_HEADER, WARM_UP_USER)
+              .putHeader(RequestTracker.WARM_UP_HEADER, key)
+              .exceptionHandler({ Throwable ex ->
+                  client.close()
+                  p.reject(ex)
+              })
+              .end()
+        }
+        connections.times { next() }
+
+        return p
+    }
+}
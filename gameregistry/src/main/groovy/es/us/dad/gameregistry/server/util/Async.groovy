@@ -0,0 +1,77 @@
+package es.us.dad.gameregistry.server.util
+
+import com.darylteo.vertx.promises.groovy.Promise
+import groovy.transform.CompileStatic
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
+import org.vertx.java.core.impl.DefaultFutureResult
+
+/**
+ * Helpers for the request path, which passes results to vert.x handlers instead of chaining
+ * promises: every {@code then}/{@code fail} allocates another promise and wraps its callback,
+ * while a handler is a single closure called with the result.
+ *
+ * The repositories still return promises, {@link #whenDone} subscribes a handler to one of them.
+ * A promise swallows the exceptions thrown by its callbacks, so a handler which throws on a result
+ * is called once more with the exception as a failure, which the controllers answer with a 500.
+ */
+@CompileStatic
+final class Async {
+
+    private Async() {
+    }
+
+    public static <T> void succeed(Handler<AsyncResult<T>> handler, T value) {
+        handler.handle(new DefaultFutureResult<T>(value))
+    }
+
+    public static <T> void fail(Handler<AsyncResult<T>> handler, Throwable cause) {
+        handler.handle(new DefaultFutureResult<T>(cause))
+    }
+
+    /**
+     * calls {@code handler} once {@code promise} is fulfilled or rejected
+     */
+    public static <T> void whenDone(Promise<T> promise, Handler<AsyncResult<T>> handler) {
+        promise.then({ Object value ->
+            deliver(handler, new DefaultFutureResult<T>((T) value))
+            return null
+        }, { Object cause ->
+            deliver(handler, new DefaultFutureResult<T>(cause as Throwable))
+            return null
+        })
+    }
+
+    /**
+     * calls {@code handler} with {@code result}, and with the exception it throws on a successful result
+     */
+    public static <T> void deliver(Handler<AsyncResult<T>> handler, AsyncResult<T> result) {
+        try {
+            handler.handle(result)
+        } catch (Exception ex) {
+            if (result.failed())
+                throw ex
+            handler.handle(new DefaultFutureResult<T>(ex))
+        }
+    }
+
+    /**
+     * @return handler which fulfills or rejects {@code promise}, for the callers which still want a promise
+     */
+    public static <T> Handler<AsyncResult<T>> handlerOf(Promise<T> promise) {
+        return { AsyncResult<T> result ->
+            if (result.succeeded())
+                promise.fulfill(result.result())
+            else
+                promise.reject(result.cause())
+        } as Handler<AsyncResult<T>>
+    }
+
+    /**
+     * @return the cause of a failed result as an exception, for {@code sendErrorResponse}
+     */
+    public static Exception causeOf(AsyncResult<?> result) {
+        Throwable cause = result.cause()
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause)
+    }
+}
@@ -19,6 +19,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -327,6 +329,33 @@ public class GameRegistryClient {
 		
 		return this;
 	}
+
+	/**
+	 * Requests a collection of GameSessions with only some of their fields, the others are left unset
+	 * in the sessions of the response (the id is always returned).
+	 * 
+	 * @param filterParams Filtering options (available options: user).
+	 * @param fields Names of the fields to return (see GameSession.FIELDS), or null for all of them.
+	 * @param responseHandler The handler that will process the response.
+	 * @return This client (fluent interface).
+	 */
+	public GameRegistryClient getSessions(Map<String,String> filterParams, Collection<String> fields, Handler<GameRegistryResponse> responseHandler) {
+		if (fields == null)
+			return getSessions(filterParams, responseHandler);
+
+		Map<String,String> params = new LinkedHashMap<String,String>();
+		if (filterParams != null)
+			params.putAll(filterParams);
+		StringBuilder joined = new StringBuilder();
+		for (String field : fields) {
+			if (joined.length() > 0)
+				joined.append(',');
+			joined.append(field);
+		}
+		params.put("fields", joined.toString());
+
+		return getSessions(params, responseHandler);
+	}
 	
 	// POST /sessions
 	/**
@@ -1,61 +1,118 @@
 package es.us.dad.gameregistry.shared.domain;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * A game session, held by the millions in the caches and the in-memory stores, so it is stored
+ * compactly: the id as its two halves, the dates as milliseconds since the epoch ({@link #NO_TIME}
+ * if unset, ie the end of an open session) and the user and game names interned, as many sessions
+ * share them. The getters and setters still take UUIDs and dates, which are created on every call
+ * and aren't shared with the session; the code on the hot path uses the {@code *Millis} accessors.
+ */
 public class GameSession extends DomainObject {
 
-    private UUID id;
+    public static final long NO_TIME = Long.MIN_VALUE;
+    /**
+     * names of the fields of the JSON map, which a query may ask for only some of
+     */
+    public static final List<String> FIELDS =
+            Collections.unmodifiableList(Arrays.asList("id", "user", "game", "start", "end", "result"));
+
+    private long idMostSigBits;
+    private long idLeastSigBits;
+    private boolean hasId;
     private String user;
     private String game;
-    private Date start;
-    private Date end;
+    private long start = NO_TIME;
+    private long end = NO_TIME;
     private Map<String, Object> result;
 
     public GameSession() {
         super();
     }
 
+    /**
+     * reads a session from its JSON map, the fields missing from a map with only some of them are left unset
+     */
     // cast from object to Map<String,Object> is unchecked
     @SuppressWarnings (value="unchecked")
     public GameSession(Map<String, Object> jsonMap) {
         super(jsonMap);
 
-        id = UUID.fromString(jsonMap.get("id").toString());
-        user = jsonMap.get("user").toString();
-        game = jsonMap.get("game").toString();
-        start = toDate(jsonMap.get("start"));
-        end = toDate(jsonMap.get("end"));
+        Object id = jsonMap.get("id");
+        if (id != null)
+            setId(id instanceof UUID ? (UUID) id : UUID.fromString(id.toString()));
+        Object user = jsonMap.get("user");
+        setUser(user != null ? user.toString() : null);
+        Object game = jsonMap.get("game");
+        setGame(game != null ? game.toString() : null);
+        start = toMillis(jsonMap.get("start"));
+        end = toMillis(jsonMap.get("end"));
         result = jsonMap.get("result") != null ? (Map<String,Object>)jsonMap.get("result") : null;
     }
 
+    /**
+     * @return the milliseconds of a date from a JSON map, a number or its text, or {@link #NO_TIME}
+     */
+    private static long toMillis(Object date) {
+        if (date instanceof Number)
+            return ((Number) date).longValue();
+        Date parsed = toDate(date);
+        return parsed != null ? parsed.getTime() : NO_TIME;
+    }
+
+    private static Long formatMillis(long millis) {
+        return millis != NO_TIME ? Long.valueOf(millis) : null;
+    }
+
+    private static String intern(String name) {
+        return name != null ? name.intern() : null;
+    }
+
     @Override
     public Map<String, Object> toJsonMap() {
         Map<String, Object> json = new HashMap<String, Object>();
 
-        json.put("id", id != null ? id.toString() : null);
+        json.put("id", hasId ? getId().toString() : null);
         json.put("user", user);
         json.put("game", game);
-        json.put("start", formatDate(start));
-        json.put("end", formatDate(end));
+        json.put("start", formatMillis(start));
+        json.put("end", formatMillis(end));
         json.put("result", result);
 
         return json;
     }
 
+    /**
+     * @param fields names of the fields to include (see {@link #FIELDS}), or {@code null} for all of them
+     */
+    public Map<String, Object> toJsonMap(Collection<String> fields) {
+        Map<String, Object> json = toJsonMap();
+        if (fields != null)
+            json.keySet().retainAll(fields);
+        return json;
+    }
+
     @Override
     public String toString() {
-        return String.format("<GameSession #%s: %s/%s, %s - %s, %s>", id, user, game, start, end, result);
+        return String.format("<GameSession #%s: %s/%s, %s - %s, %s>", getId(), user, game, getStart(), getEnd(), result);
     }
 
     public UUID getId() {
-        return id;
+        return hasId ? new UUID(idMostSigBits, idLeastSigBits) : null;
     }
 
     public void setId(UUID id) {
-        this.id = id;
+        hasId = id != null;
+        idMostSigBits = hasId ? id.getMostSignificantBits() : 0;
+        idLeastSigBits = hasId ? id.getLeastSignificantBits() : 0;
     }
 
     public String getUser() {
@@ -63,7 +120,7 @@ public class GameSession extends DomainObject {
     }
 
     public void setUser(String user) {
-        this.user = user;
+        this.user = intern(user);
     }
 
     public String getGame() {
@@ -71,25 +128,51 @@ public class GameSession extends DomainObject {
     }
 
     public void setGame(String game) {
-        this.game = game;
+        this.game = intern(game);
     }
 
     public Date getStart() {
-        return start;
+        return start != NO_TIME ? new Date(start) : null;
     }
 
     public void setStart(Date start) {
+        this.start = start != null ? start.getTime() : NO_TIME;
+    }
+
+    /**
+     * @return milliseconds since the epoch, or {@link #NO_TIME}
+     */
+    public long getStartMillis() {
+        return start;
+    }
+
+    public void setStartMillis(long start) {
         this.start = start;
     }
 
     public Date getEnd() {
-        return end;
+        return end != NO_TIME ? new Date(end) : null;
     }
 
     public void setEnd(Date end) {
+        this.end = end != null ? end.getTime() : NO_TIME;
+    }
+
+    /**
+     * @return milliseconds since the epoch, or {@link #NO_TIME} while the session is open
+     */
+    public long getEndMillis() {
+        return end;
+    }
+
+    public void setEndMillis(long end) {
         this.end = end;
     }
 
+    public boolean isFinished() {
+        return end != NO_TIME;
+    }
+
     public Map<String, Object> getResult() {
         return result;
     }
@@ -9,6 +9,7 @@ import org.vertx.testtools.TestVerticle;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -200,6 +201,24 @@ public class ClientIntegrationTest extends TestVerticle {
         });
     }
 
+    @Test
+    public void testServerTiming() {
+        GameRegistryClient client = new GameRegistryClient(InetAddress.getLoopbackAddress(), vertx)
+                .setUser("testUser")
+                .setToken("test");
+
+        // the test configuration enables the Server-Timing header
+        client.addSession("testGame", event -> {
+            assertEquals(ResponseType.OK, event.responseType);
+            assertTrue(event.serverTiming.containsKey("auth"));
+            assertTrue(event.serverTiming.containsKey("db_create"));
+            assertTrue(event.serverTiming.containsKey("total"));
+            assertTrue(event.serverTiming.get("total") >= event.serverTiming.get("db_create"));
+
+            testComplete();
+        });
+    }
+
     @Test
     public void testClientGetSessions() throws UnknownHostException {
         GameRegistryClient client = new GameRegistryClient(InetAddress.getLocalHost(), vertx)
@@ -228,6 +247,48 @@ public class ClientIntegrationTest extends TestVerticle {
         });
     }
 
+    @Test
+    public void testClientGetSessionsFields() throws UnknownHostException {
+        GameRegistryClient client = new GameRegistryClient(InetAddress.getLocalHost(), vertx)
+                .setUser("testUser3")
+                .setToken("test");
+
+        client.addSession("testGame3", event -> {
+            assertEquals(ResponseType.OK, event.responseType);
+            UUID id = event.sessions[0].getId();
+
+            Map<String,String> filterParams = new HashMap<String, String>();
+            filterParams.put("user", "testUser3");
+            client.getSessions(filterParams, Arrays.asList("game", "start"), event2 -> {
+                assertEquals(ResponseType.OK, event2.responseType);
+                assertEquals(1, event2.sessions.length);
+
+                // only the requested fields and the id are populated
+                GameSession session = event2.sessions[0];
+                assertEquals(id, session.getId());
+                assertEquals("testGame3", session.getGame());
+                assertNotNull(session.getStart());
+                assertNull(session.getUser());
+
+                testComplete();
+            });
+        });
+    }
+
+    @Test
+    public void testClientGetSessionsUnknownField() throws UnknownHostException {
+        GameRegistryClient client = new GameRegistryClient(InetAddress.getLocalHost(), vertx)
+                .setUser("testUser")
+                .setToken("test");
+
+        client.getSessions(null, Arrays.asList("game", "password"), event -> {
+            assertEquals(ResponseType.INVALID_REQUEST, event.responseType);
+            assertEquals(0, event.sessions.length);
+
+            testComplete();
+        });
+    }
+
     @Test
     public void testClientGetSessionNotFound() throws UnknownHostException {
         GameRegistryClient client = new GameRegistryClient(InetAddress.getLocalHost(), vertx)
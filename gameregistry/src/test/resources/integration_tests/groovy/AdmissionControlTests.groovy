@@ -0,0 +1,79 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.DatabaseException
+import es.us.dad.gameregistry.server.exception.ServiceUnavailableException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.AdmissionControlledRepository
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.repository.PersistorClient
+import es.us.dad.gameregistry.server.repository.VegasLimit
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+// a repository whose calls only complete when the test says so
+ISessionRepository pendingRepository(List<Promise> pending) {
+    return [findById: { UUID id ->
+                Promise<GameSession> p = new Promise<GameSession>()
+                pending.add(p)
+                return p
+            },
+            delete  : { UUID id ->
+                Promise<Void> p = new Promise<Void>()
+                pending.add(p)
+                return p
+            }] as ISessionRepository
+}
+
+def testShedsReadsBeforeWrites() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    List<Promise> pending = []
+    // a fixed limit of 10, reads may use 5 of it
+    ISessionRepository repository = new AdmissionControlledRepository(pendingRepository(pending),
+            new VegasLimit(10, 10, 10), metrics, 0.5, 1)
+
+    5.times { repository.findById(UUID.randomUUID()) }
+    repository.findById(UUID.randomUUID()).fail({ Exception ex ->
+        assertEquals(ServiceUnavailableException.class, ex.getClass())
+        assertEquals(["Retry-After": "1"], ex.responseHeaders)
+        assertEquals(1L, metrics.counter("repository_shed_reads").sum())
+
+        // writes may still use the rest of the limit
+        5.times { repository.delete(UUID.randomUUID()) }
+        assertEquals(10, pending.size())
+        assertEquals(10, metrics.snapshot()["repository_in_flight"])
+
+        repository.delete(UUID.randomUUID()).fail({ Exception ex2 ->
+            assertEquals(ServiceUnavailableException.class, ex2.getClass())
+            assertEquals(1L, metrics.counter("repository_shed_writes").sum())
+
+            pending.each { it.fulfill(null) }
+            assertEquals(0, metrics.snapshot()["repository_in_flight"])
+            testComplete()
+        })
+    })
+}
+
+def testReleasesCallsWithoutReply() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    // a persistor which never replies
+    vertx.eventBus.registerHandler("test.silent.persistor") { message -> }
+    PersistorClient persistor = new PersistorClient(vertx, container.logger, metrics, 0, 100)
+    ISessionRepository repository = new AdmissionControlledRepository(
+            new MongoSessionRepository(persistor, container.logger, "test.silent.persistor", null, 0),
+            new VegasLimit(10, 10, 10), metrics, 0.5, 1)
+
+    repository.findById(UUID.randomUUID()).fail({ Exception ex ->
+        assertEquals(DatabaseException.class, ex.getClass())
+        assertEquals(0, metrics.snapshot()["repository_in_flight"])
+        assertEquals(0L, metrics.snapshot()["mongo_find_in_flight"] as long)
+        assertEquals(1L, metrics.counter("mongo_find_errors").sum())
+        testComplete()
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
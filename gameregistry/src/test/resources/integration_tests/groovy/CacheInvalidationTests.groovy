@@ -0,0 +1,91 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.service.CacheInvalidationBus
+import es.us.dad.gameregistry.server.service.SessionCache
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+// a SessionService with its own cache, like the one of a registry node
+SessionService createNode(MetricsRegistry metrics) {
+    ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger)
+    SessionCache cache = new SessionCache(100, 60 * 1000)
+    CacheInvalidationBus invalidations = new CacheInvalidationBus(vertx, cache, metrics, 20, 100)
+    invalidations.start()
+    return new SessionService(vertx, container.logger, sessionRepository, cache, invalidations)
+}
+
+Promise<Void> waitFor(long millis) {
+    Promise<Void> p = new Promise<Void>()
+    vertx.setTimer(millis, {
+        p.fulfill(null)
+    })
+    return p
+}
+
+def testFinishInvalidatesOtherNodes() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    SessionService node1 = createNode(metrics)
+    SessionService node2 = createNode(metrics)
+    UUID id = null
+
+    node1.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        id = gameSession.id
+        // node2 caches the open session
+        return node2.getSession(id)
+    }).then({ GameSession gameSession ->
+        assertNull(gameSession.end)
+        return node1.finishSession("testUser", id, null)
+    }).then({
+        return waitFor(500)
+    }).then({
+        return node2.getSession(id)
+    }).then({ GameSession gameSession ->
+        assertNotNull(gameSession.end)
+        assertEquals(1L, metrics.histogram("cache_invalidation_lag_ms").count)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testDeleteInvalidatesOtherNodes() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    SessionService node1 = createNode(metrics)
+    SessionService node2 = createNode(metrics)
+    UUID id = null
+
+    node1.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        id = gameSession.id
+        return node2.getSession(id)
+    }).then({
+        return node1.deleteSession("testUser", id)
+    }).then({
+        return waitFor(500)
+    }).then({
+        return node2.getSession(id)
+    }).then({
+        assertTrue("should not be reached", false)
+    }).fail({ Exception ex ->
+        assertEquals(ObjectNotFoundException.class, ex.getClass())
+        testComplete()
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
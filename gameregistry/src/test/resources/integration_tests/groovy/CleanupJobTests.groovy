@@ -0,0 +1,159 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoLock
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.repository.PersistorClient
+import es.us.dad.gameregistry.server.service.CleanupJob
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+Promise<Void> waitFor(long millis) {
+    Promise<Void> p = new Promise<Void>()
+    vertx.setTimer(millis, {
+        p.fulfill(null)
+    })
+    return p
+}
+
+public <T> Promise<T> fulfilled(T value) {
+    Promise<T> p = new Promise<T>()
+    p.fulfill(value)
+    return p
+}
+
+MongoLock createLock(String name) {
+    PersistorClient persistor = new PersistorClient(vertx, container.logger)
+    return new MongoLock(persistor, container.logger, MongoSessionRepository.DEFAULT_ADDRESS, name)
+}
+
+// creates an open session which was started two hours ago
+Promise<GameSession> createStaleSession(ISessionRepository sessionRepository) {
+    GameSession session = new GameSession()
+    session.setId(UUID.randomUUID())
+    session.setUser("testUser")
+    session.setGame("testGame")
+    session.setStart(new Date(new Date().getTime() - 2 * 60 * 60 * 1000))
+    return sessionRepository.create(session)
+}
+
+def testDeletesInBatches() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger)
+    CleanupJob cleanupJob = new CleanupJob(vertx, container.logger, sessionRepository,
+            createLock("test_cleanup"),
+            null, metrics, 60 * 60, 2, 10, 60 * 1000)
+
+    createStaleSession(sessionRepository).then({
+        return createStaleSession(sessionRepository)
+    }).then({
+        return createStaleSession(sessionRepository)
+    }).then({
+        assertTrue(cleanupJob.run())
+        // a second run is not started while the first one is running
+        assertFalse(cleanupJob.run())
+        return waitFor(1000)
+    }).then({
+        Map status = cleanupJob.status()
+        assertFalse(status["running"] as boolean)
+        assertEquals(3L, status["last"]["deleted"] as long)
+        assertEquals(2, status["last"]["batches"] as int)
+        assertEquals(3L, metrics.counter("sessions_cleaned").sum())
+        return sessionRepository.find(null, "testUser")
+    }).then({ List<GameSession> sessions ->
+        assertTrue(sessions.isEmpty())
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testPausedJobDoesNotRun() {
+    CleanupJob cleanupJob = new CleanupJob(vertx, container.logger, new MongoSessionRepository(vertx, container.logger),
+            null, null, new MetricsRegistry(), 60 * 60, 2, 10, 60 * 1000)
+
+    cleanupJob.pause()
+    assertFalse(cleanupJob.run())
+    assertTrue(cleanupJob.status()["paused"] as boolean)
+    testComplete()
+}
+
+def testRunTimesOutWithoutAnswer() {
+    // a repository which never answers
+    ISessionRepository stalled = [findExpired: { long maxAge, int limit -> new Promise<List<UUID>>() }] as ISessionRepository
+    CleanupJob cleanupJob = new CleanupJob(vertx, container.logger, stalled, null, null, new MetricsRegistry(),
+            60 * 60, 2, 10, 100)
+
+    assertTrue(cleanupJob.run())
+    waitFor(300).then({
+        Map<String, Object> status = cleanupJob.status()
+        assertFalse(status["running"] as boolean)
+        assertEquals("timed out", status["last"]["outcome"])
+        // the job runs again
+        assertTrue(cleanupJob.run())
+        testComplete()
+    })
+}
+
+def testPauseBetweenBatchesEndsTheRun() {
+    List<UUID> expired = (1..2).collect { UUID.randomUUID() }
+    ISessionRepository repository = [findExpired: { long maxAge, int limit -> fulfilled(expired) },
+                                     expire     : { List<UUID> ids, long maxAge -> fulfilled(ids.size()) }] as ISessionRepository
+    CleanupJob cleanupJob = new CleanupJob(vertx, container.logger, repository, null, null, new MetricsRegistry(),
+            60 * 60, 2, 200, 60 * 1000)
+
+    assertTrue(cleanupJob.run())
+    // during the delay after the first batch
+    waitFor(50).then({
+        cleanupJob.pause()
+        return waitFor(300)
+    }).then({
+        Map<String, Object> status = cleanupJob.status()
+        assertFalse(status["running"] as boolean)
+        assertEquals("paused", status["last"]["outcome"])
+        assertEquals(1, status["last"]["batches"])
+        testComplete()
+    })
+}
+
+def testLockIsExclusive() {
+    MongoLock lock1 = createLock("test_lock")
+    MongoLock lock2 = createLock("test_lock")
+
+    lock1.acquire(60 * 1000).then({ Boolean held ->
+        assertTrue(held)
+        return lock2.acquire(60 * 1000)
+    }).then({ Boolean held ->
+        assertFalse(held)
+        // renewing a held lock
+        return lock1.acquire(60 * 1000)
+    }).then({ Boolean held ->
+        assertTrue(held)
+        return lock1.release()
+    }).then({
+        return lock2.acquire(60 * 1000)
+    }).then({ Boolean held ->
+        assertTrue(held)
+        return lock2.release()
+    }).then({
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
@@ -0,0 +1,28 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.metrics.EventLoopWatchdog
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testDetectsBlockedEventLoop() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    EventLoopWatchdog watchdog = new EventLoopWatchdog(vertx, container.logger, metrics, 10, 100)
+    watchdog.start()
+
+    vertx.setTimer(50, {
+        // blocks the event loop on purpose
+        Thread.sleep(500)
+
+        vertx.setTimer(100, {
+            watchdog.stop()
+            assertEquals(1L, metrics.counter("event_loop_blocked").sum())
+            assertTrue(metrics.histogram("event_loop_lag_ms").max >= 400)
+            testComplete()
+        })
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
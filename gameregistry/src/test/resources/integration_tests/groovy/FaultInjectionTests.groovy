@@ -0,0 +1,79 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.exception.DatabaseException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.FaultInjectingRepository
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+GameSession newSession() {
+    GameSession session = new GameSession()
+    session.setId(UUID.randomUUID())
+    session.setUser("testUser")
+    session.setGame("testGame")
+    session.setStart(new Date())
+    return session
+}
+
+def testInjectsErrors() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    FaultInjectingRepository repository = new FaultInjectingRepository(vertx, container.logger,
+            new InMemorySessionRepository(), metrics)
+    repository.configure([create: [error_rate: 1]])
+
+    repository.create(newSession()).then({
+        fail("The create should have failed.")
+    }).fail({ Exception ex ->
+        assertEquals(DatabaseException.class, ex.getClass())
+        assertEquals(1L, metrics.counter("repository_injected_errors").sum())
+        // other operations aren't affected
+        repository.findById(UUID.randomUUID()).fail({ Exception notFound ->
+            assertEquals(1L, metrics.counter("repository_injected_errors").sum())
+            testComplete()
+        })
+    })
+}
+
+def testInjectsLatencyAndStalls() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    FaultInjectingRepository repository = new FaultInjectingRepository(vertx, container.logger,
+            new InMemorySessionRepository(), metrics)
+    repository.configure(["*": [latency: 50, stall_rate: 1, stall_time: 100]])
+
+    long started = System.currentTimeMillis()
+    repository.create(newSession()).then({ GameSession session ->
+        assertTrue(System.currentTimeMillis() - started >= 150)
+        assertEquals(1L, metrics.counter("repository_injected_stalls").sum())
+        testComplete()
+    })
+}
+
+def testConfiguration() {
+    FaultInjectingRepository repository = new FaultInjectingRepository(vertx, container.logger,
+            new InMemorySessionRepository(), new MetricsRegistry())
+    repository.configure([find: [latency: 20, distribution: "exponential"]])
+    assertEquals([find: [latency   : 20L, distribution: "exponential", error_rate: 0.0d,
+                         stall_rate: 0.0d, stall_time: 0L]], repository.config)
+
+    [[select: [:]], [find: [error_rate: 2]], [find: [distribution: "normal"]], [find: [latency: -1]]].each { config ->
+        try {
+            repository.configure(config)
+            fail("${config} should have been rejected.")
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    // a published configuration replaces the one of every node
+    repository.start()
+    repository.publish([:])
+    vertx.setTimer(100, {
+        assertEquals([:], repository.config)
+        testComplete()
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
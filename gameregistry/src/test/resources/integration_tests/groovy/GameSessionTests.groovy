@@ -0,0 +1,64 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testJsonRoundTrip() {
+    UUID id = UUID.randomUUID()
+    Map<String, Object> json = [id: id.toString(), user: "user1", game: "game1", start: 1000L, end: null,
+                                result: [score: 1]]
+    GameSession session = new GameSession(json)
+
+    assertEquals(id, session.id)
+    assertEquals(new Date(1000), session.start)
+    assertNull(session.end)
+    assertFalse(session.finished)
+    assertEquals(GameSession.NO_TIME, session.endMillis)
+    assertEquals(json, session.toJsonMap())
+    // the dates may come as text too
+    assertEquals(1000L, new GameSession(json + [start: "1000"]).startMillis)
+    testComplete()
+}
+
+def testDatesAreCopies() {
+    GameSession session = new GameSession()
+    Date start = new Date(1000)
+    session.setStart(start)
+    start.setTime(2000)
+    session.start.setTime(3000)
+
+    assertEquals(1000L, session.startMillis)
+    session.setEnd(new Date(4000))
+    assertTrue(session.finished)
+    session.setEnd(null)
+    assertFalse(session.finished)
+    testComplete()
+}
+
+def testPartialJson() {
+    UUID id = UUID.randomUUID()
+    GameSession session = new GameSession([id: id.toString(), game: "game1"])
+
+    assertEquals(id, session.id)
+    assertNull(session.user)
+    assertEquals(GameSession.NO_TIME, session.startMillis)
+    assertEquals([id: id.toString(), game: "game1"], session.toJsonMap(["id", "game"]))
+    assertEquals(GameSession.FIELDS.toSet(), session.toJsonMap(null).keySet())
+    testComplete()
+}
+
+def testNamesAreShared() {
+    GameSession first = new GameSession([id: UUID.randomUUID().toString(), user: new String("user1".toCharArray()),
+                                         game: new String("game1".toCharArray()), start: 1000L])
+    GameSession second = new GameSession([id: UUID.randomUUID().toString(), user: new String("user1".toCharArray()),
+                                          game: new String("game1".toCharArray()), start: 1000L])
+
+    assertSame(first.user, second.user)
+    assertSame(first.game, second.game)
+    testComplete()
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
@@ -0,0 +1,111 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.server.repository.HazelcastSessionRepository
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+// hazelcast runs embedded with a single node, sessions are persisted to the test database
+ISessionRepository createHotRepository(ISessionRepository mongoRepository) {
+    return new HazelcastSessionRepository(vertx, container.logger,
+            HazelcastSessionRepository.clusterOrEmbeddedInstance(), mongoRepository, 60)
+}
+
+Promise<Void> waitFor(long millis) {
+    Promise<Void> p = new Promise<Void>()
+    vertx.setTimer(millis, {
+        p.fulfill(null)
+    })
+    return p
+}
+
+def testStartIsPersistedAsynchronously() {
+    ISessionRepository mongoRepository = new MongoSessionRepository(vertx, container.logger)
+    ISessionRepository hotRepository = createHotRepository(mongoRepository)
+    SessionService sessionService = new SessionService(vertx, container.logger, hotRepository)
+    UUID id = null
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        id = gameSession.id
+        return hotRepository.findById(id)
+    }).then({ GameSession gameSession ->
+        assertEquals("testGame", gameSession.game)
+        return waitFor(1000)
+    }).then({
+        return mongoRepository.findById(id)
+    }).then({ GameSession gameSession ->
+        assertNull(gameSession.end)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testFinishIsWrittenThrough() {
+    ISessionRepository mongoRepository = new MongoSessionRepository(vertx, container.logger)
+    ISessionRepository hotRepository = createHotRepository(mongoRepository)
+    SessionService sessionService = new SessionService(vertx, container.logger, hotRepository)
+    UUID id = null
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        id = gameSession.id
+        return sessionService.finishSession("testUser", id, [points: 10])
+    }).then({
+        // no waiting: the finished session is already in mongo
+        return mongoRepository.findById(id)
+    }).then({ GameSession gameSession ->
+        assertNotNull(gameSession.end)
+        assertEquals(10, gameSession.result["points"])
+        return waitFor(1000)
+    }).then({
+        // the asynchronous write of the open session must not overwrite the finished one
+        return mongoRepository.findById(id)
+    }).then({ GameSession gameSession ->
+        assertNotNull(gameSession.end)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testDeleteBeforePersisted() {
+    ISessionRepository mongoRepository = new MongoSessionRepository(vertx, container.logger)
+    ISessionRepository hotRepository = createHotRepository(mongoRepository)
+    SessionService sessionService = new SessionService(vertx, container.logger, hotRepository)
+    UUID id = null
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        id = gameSession.id
+        return sessionService.deleteSession("testUser", id)
+    }).then({
+        return waitFor(1000)
+    }).then({
+        return hotRepository.findById(id)
+    }).then({
+        assertTrue("should not be reached", false)
+    }).fail({ Exception ex ->
+        assertEquals(ObjectNotFoundException.class, ex.getClass())
+        mongoRepository.find(id, null).then({ List<GameSession> sessions ->
+            assertTrue(sessions.isEmpty())
+            testComplete()
+        })
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
@@ -0,0 +1,80 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.service.HmacLoginService
+import groovy.transform.Field
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+@Field byte[] oldKey = "old secret of the registry tests".bytes
+@Field byte[] newKey = "new secret of the registry tests".bytes
+@Field long now = 1431234567L
+
+HmacLoginService createService(Map<String, byte[]> keys) {
+    Map<String, String> encoded = keys.collectEntries { String id, byte[] key -> [id, Base64.encoder.encodeToString(key)] }
+    // tokens are accepted up to 30 seconds after they expired and may be valid for an hour
+    return new HmacLoginService(encoded, 30, 3600, new MetricsRegistry())
+}
+
+def testVerifiesSignature() {
+    HmacLoginService service = createService(["k1": oldKey])
+    String token = HmacLoginService.sign("k1", oldKey, "user1", now + 60)
+
+    assertTrue(service.verify("user1", token, now))
+    // the token is bound to its user, key and expiry
+    assertFalse(service.verify("user2", token, now))
+    assertFalse(service.verify("user1", token.replace("k1.", "k2."), now))
+    assertFalse(service.verify("user1", token.replace("${now + 60}", "${now + 120}"), now))
+    assertFalse(service.verify("user1", HmacLoginService.sign("k1", newKey, "user1", now + 60), now))
+    assertFalse(service.verify("user1", token.substring(0, token.length() - 1) + "A", now))
+    ["", "k1", "k1.1.", "k1.x." + token.split("\\.")[2], "k1.${now + 60}.!" + token.substring(token.length() - 42)].each {
+        assertFalse(service.verify("user1", it as String, now))
+    }
+    assertFalse(service.verify(null, token, now))
+    // user names which aren't ASCII take the slow path
+    assertTrue(service.verify("usér", HmacLoginService.sign("k1", oldKey, "usér", now + 60), now))
+    testComplete()
+}
+
+def testExpiry() {
+    HmacLoginService service = createService(["k1": oldKey])
+
+    assertTrue(service.verify("user1", HmacLoginService.sign("k1", oldKey, "user1", now - 10), now))
+    assertFalse(service.verify("user1", HmacLoginService.sign("k1", oldKey, "user1", now - 31), now))
+    // valid for longer than allowed
+    assertFalse(service.verify("user1", HmacLoginService.sign("k1", oldKey, "user1", now + 3601), now))
+    testComplete()
+}
+
+def testKeyRotation() {
+    String oldToken = HmacLoginService.sign("k1", oldKey, "user1", now + 60)
+    String newToken = HmacLoginService.sign("k2", newKey, "user1", now + 60)
+
+    HmacLoginService rotating = createService(["k1": oldKey, "k2": newKey])
+    assertTrue(rotating.verify("user1", oldToken, now))
+    assertTrue(rotating.verify("user1", newToken, now))
+
+    HmacLoginService rotated = createService(["k2": newKey])
+    assertFalse(rotated.verify("user1", oldToken, now))
+    assertTrue(rotated.verify("user1", newToken, now))
+    testComplete()
+}
+
+def testIsAuthenticated() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    HmacLoginService service = new HmacLoginService(["k1": Base64.encoder.encodeToString(oldKey)], 30, 3600, metrics)
+    long expires = System.currentTimeMillis().intdiv(1000) + 60
+
+    service.isAuthenticated("user1", HmacLoginService.sign("k1", oldKey, "user1", expires), { result ->
+        assertTrue(result.result())
+        service.isAuthenticated("user1", "invalid", { invalid ->
+            assertFalse(invalid.result())
+            assertEquals(1L, metrics.counter("auth_tokens_rejected").sum())
+            testComplete()
+        })
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
@@ -0,0 +1,133 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.repository.PersistorClient
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.eventbus.Message
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+MongoSessionRepository createRepository(boolean legacyIds) {
+    return new MongoSessionRepository(new PersistorClient(vertx, container.logger), container.logger,
+                                      MongoSessionRepository.DEFAULT_ADDRESS, null, 0, legacyIds)
+}
+
+GameSession newSession() {
+    GameSession session = new GameSession()
+    session.setId(UUID.randomUUID())
+    session.setUser("testUser")
+    session.setGame("testGame")
+    session.setStart(new Date())
+    return session
+}
+
+Promise<Map> sendToPersistor(Map command) {
+    Promise<Map> p = new Promise<Map>()
+    vertx.eventBus.send(MongoSessionRepository.DEFAULT_ADDRESS, command) { Message message ->
+        Map body = message.body
+        if (body["status"] == "ok")
+            p.fulfill(body)
+        else
+            p.reject(new RuntimeException(body["message"] as String))
+    }
+    return p
+}
+
+// stores a session the way older versions did: generated _id, id as a string
+Promise<Map> saveLegacySession(GameSession session) {
+    return sendToPersistor([action: "save", collection: "game_session", document: session.toJsonMap()])
+}
+
+def testStoresBinaryIds() {
+    MongoSessionRepository repository = createRepository(false)
+    GameSession session = newSession()
+
+    repository.create(session).then({
+        return sendToPersistor([action: "find", collection: "game_session",
+                                matcher: [_id: MongoSessionRepository.binaryId(session.id)]])
+    }).then({ Map reply ->
+        List<Map> documents = reply["results"] as List<Map>
+        assertEquals(1, documents.size())
+        // no second copy of the id
+        assertFalse(documents[0].containsKey("id"))
+        assertEquals(session.id, MongoSessionRepository.idOf(documents[0]))
+        return repository.findById(session.id)
+    }).then({ GameSession found ->
+        assertEquals(session.toJsonMap(), found.toJsonMap())
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testProjectsFields() {
+    MongoSessionRepository repository = createRepository(false)
+    GameSession session = newSession()
+    session.setResult([score: 1])
+
+    repository.create(session).then({
+        return repository.find(session.id, null, ["game", "start"])
+    }).then({ List<GameSession> found ->
+        assertEquals(1, found.size())
+        // the id is always read, the fields not asked for are left unset
+        assertEquals(session.id, found[0].id)
+        assertEquals("testGame", found[0].game)
+        assertEquals(session.startMillis, found[0].startMillis)
+        assertNull(found[0].user)
+        assertNull(found[0].result)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testFindsAndMigratesLegacySessions() {
+    MongoSessionRepository repository = createRepository(true)
+    GameSession legacy = newSession()
+    GameSession updated = newSession()
+
+    saveLegacySession(legacy).then({
+        return saveLegacySession(updated)
+    }).then({
+        // not found without the fallback
+        return createRepository(false).find(legacy.id, null)
+    }).then({ List<GameSession> sessions ->
+        assertTrue(sessions.isEmpty())
+        return repository.findById(legacy.id)
+    }).then({ GameSession found ->
+        assertEquals(legacy.toJsonMap(), found.toJsonMap())
+        // an update rewrites the session with its binary id
+        updated.setEnd(new Date())
+        return repository.update(updated)
+    }).then({
+        return repository.migrateLegacySessions(10)
+    }).then({ Integer migrated ->
+        assertEquals(1, migrated)
+        return repository.migrateLegacySessions(10)
+    }).then({ Integer migrated ->
+        assertEquals(0, migrated)
+        return createRepository(false).find(null, "testUser")
+    }).then({ List<GameSession> sessions ->
+        Map<UUID, GameSession> byId = sessions.collectEntries { [it.id, it] }
+        assertEquals(legacy.toJsonMap(), byId[legacy.id].toJsonMap())
+        assertEquals(updated.toJsonMap(), byId[updated.id].toJsonMap())
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
@@ -0,0 +1,44 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.repository.PersistorClient
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testRecordsRoundTrips() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    PersistorClient persistor = new PersistorClient(vertx, container.logger, metrics, 100)
+    ISessionRepository sessionRepository = new MongoSessionRepository(persistor, container.logger,
+            MongoSessionRepository.DEFAULT_ADDRESS, null, 0)
+    SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository)
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        return sessionService.findSessions(null, "testUser")
+    }).then({ List<GameSession> sessions ->
+        Map snapshot = metrics.snapshot()
+        assertEquals(1L, snapshot["mongo_update_us"]["count"] as long)
+        assertEquals(1L, snapshot["mongo_find_us"]["count"] as long)
+        assertEquals(1L, snapshot["mongo_find_documents"]["max"] as long)
+        assertEquals(0L, snapshot["mongo_find_in_flight"] as long)
+        assertEquals(0L, snapshot["mongo_find_errors"] as long)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
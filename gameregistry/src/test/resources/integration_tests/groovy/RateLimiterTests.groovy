@@ -0,0 +1,79 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.exception.TooManyRequestsException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.service.RateLimiter
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testUserLimit() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    // 1 request per second, bursts of 3
+    RateLimiter rateLimiter = new RateLimiter(new RateLimiter.Limit(1, 3), [:], 100, metrics)
+
+    3.times { assertEquals(0L, rateLimiter.acquire("user1", "GET /api/v1/sessions/:id")) }
+    long wait = rateLimiter.acquire("user1", "GET /api/v1/sessions/:id")
+    assertTrue(wait > 0 && wait <= 1000)
+    assertEquals(1L, metrics.counter("rate_limited_requests").sum())
+    // other users have their own bucket
+    assertEquals(0L, rateLimiter.acquire("user2", "GET /api/v1/sessions/:id"))
+
+    assertEquals(["Retry-After": "1"], new TooManyRequestsException(wait).responseHeaders)
+    testComplete()
+}
+
+def testRouteLimit() {
+    RateLimiter rateLimiter = new RateLimiter(null, ["POST /api/v1/sessions": new RateLimiter.Limit(1, 1)], 100,
+                                              new MetricsRegistry())
+
+    assertEquals(0L, rateLimiter.acquire("user1", "POST /api/v1/sessions"))
+    assertTrue(rateLimiter.acquire("user1", "POST /api/v1/sessions") > 0)
+    // other routes aren't limited
+    assertEquals(0L, rateLimiter.acquire("user1", "GET /api/v1/sessions/:id"))
+    testComplete()
+}
+
+def testUserAndRouteBucketsAreSeparate() {
+    // the user "user1 POST /api/v1/sessions" doesn't share the route bucket of user1
+    RateLimiter rateLimiter = new RateLimiter(new RateLimiter.Limit(1, 1),
+                                              ["POST /api/v1/sessions": new RateLimiter.Limit(1, 1)], 100,
+                                              new MetricsRegistry())
+
+    assertEquals(0L, rateLimiter.acquire("user1", "POST /api/v1/sessions"))
+    assertEquals(0L, rateLimiter.acquire("user1 POST /api/v1/sessions", null))
+    testComplete()
+}
+
+def testRejectsNonPositiveRates() {
+    [[0, 1], [-1, 1], [1, 0]].each { List<Integer> limit ->
+        try {
+            new RateLimiter.Limit(limit[0], limit[1])
+            fail("Limit ${limit} was accepted")
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+    testComplete()
+}
+
+def testIdleBucketsAreEvicted() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    // refills a token every 100 milliseconds, slow enough for the first acquires of a cold JVM
+    RateLimiter rateLimiter = new RateLimiter(new RateLimiter.Limit(10, 1), [:], 2, metrics)
+
+    rateLimiter.acquire("user1", null)
+    rateLimiter.acquire("user2", null)
+    rateLimiter.acquire("user3", null)
+    // at most 2 buckets are kept
+    assertEquals(2, metrics.snapshot()["rate_limiter_buckets"])
+
+    vertx.setTimer(250, {
+        rateLimiter.acquire("user4", null)
+        // the buckets of user2 and user3 were full again
+        assertEquals(1, metrics.snapshot()["rate_limiter_buckets"])
+        testComplete()
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
@@ -0,0 +1,77 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.core.eventbus.Message
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+// counts the queries sent to the read address and forwards them to the real persistor
+def registerReadAddress(List<String> actions) {
+    vertx.eventBus.registerHandler("gameregistry.db.read") { Message message ->
+        actions.add(message.body["action"] as String)
+        vertx.eventBus.send("gameregistry.db", message.body) { Message reply ->
+            message.reply(reply.body)
+        }
+    }
+}
+
+def testReadsGoToReadAddress() {
+    List<String> readActions = []
+    registerReadAddress(readActions)
+
+    ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger, "gameregistry.db",
+                                                                      "gameregistry.db.read", 0)
+    SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository)
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        assertTrue(readActions.isEmpty())
+        return sessionService.getSession(gameSession.id)
+    }).then({ GameSession gameSession ->
+        assertEquals(["find"], readActions)
+        testComplete()
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+def testReadYourWrites() {
+    List<String> readActions = []
+    registerReadAddress(readActions)
+
+    ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger, "gameregistry.db",
+                                                                      "gameregistry.db.read", 2000)
+    SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository)
+
+    sessionService.startSession("testUser", "testGame").then({ GameSession gameSession ->
+        return sessionService.getSession(gameSession.id)
+    }).then({ GameSession gameSession ->
+        // read right after the write: served by the primary
+        assertTrue(readActions.isEmpty())
+
+        vertx.setTimer(3 * 1000, {
+            sessionService.getSession(gameSession.id).then({
+                // the window is over: served by the read address
+                assertEquals(["find"], readActions)
+                testComplete()
+            })
+        })
+    }).fail({ Exception ex ->
+        container.logger.info("Error: " + ex)
+        assertTrue(false)
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
@@ -0,0 +1,167 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.controller.SessionsController
+import es.us.dad.gameregistry.server.exception.ServiceUnavailableException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository
+import es.us.dad.gameregistry.server.service.RemoteLoginService
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.GameRegistryConstants
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import groovy.transform.Field
+import org.vertx.groovy.core.buffer.Buffer
+import org.vertx.groovy.core.http.HttpClientResponse
+import org.vertx.groovy.core.http.HttpServer
+import org.vertx.groovy.core.http.HttpServerRequest
+import org.vertx.groovy.core.http.RouteMatcher
+import org.vertx.groovy.testtools.VertxTests
+import org.vertx.java.core.AsyncResult
+import org.vertx.java.core.Handler
+
+import static org.vertx.testtools.VertxAssert.*
+
+@Field int loginPort = 8091
+// token lists received by the stub login component, one per request
+@Field List<List> received = []
+
+/**
+ * starts a login component which accepts the tokens named "valid-<user>", or answers with {@code status}
+ */
+void withLoginStub(int status, Closure test) {
+    HttpServer server = vertx.createHttpServer()
+    server.requestHandler { HttpServerRequest request ->
+        request.bodyHandler { Buffer body ->
+            List tokens = new JsonSlurper().parseText(body.toString()).tokens as List
+            received << tokens
+            List valid = tokens.collect { Map it -> it.token == "valid-" + it.user }
+            request.response.statusCode = status
+            request.response.end(status == 200 ? JsonOutput.toJson([valid: valid]) : "")
+        }
+    }
+    server.listen(loginPort, "localhost") { result ->
+        assertTrue(result.succeeded)
+        test()
+    }
+}
+
+RemoteLoginService createService(int maxBatch) {
+    // batches are collected for 20 milliseconds
+    return new RemoteLoginService(vertx, container.logger, new MetricsRegistry(), "localhost", loginPort,
+                                  "/api/v1/tokens/validate", 2, 20, maxBatch, 1000)
+}
+
+Handler<AsyncResult<Boolean>> collect(List<AsyncResult<Boolean>> results, int expected, Closure whenAll) {
+    return { AsyncResult<Boolean> result ->
+        results << result
+        if (results.size() == expected)
+            whenAll()
+    } as Handler<AsyncResult<Boolean>>
+}
+
+def testCoalescesIdenticalValidations() {
+    withLoginStub(200) {
+        RemoteLoginService service = createService(100)
+        List<AsyncResult<Boolean>> results = []
+        Handler<AsyncResult<Boolean>> handler = collect(results, 50) {
+            assertTrue(results.every { it.succeeded() && it.result() })
+            // one token sent for the burst of requests of the user
+            assertEquals(1, received.size())
+            assertEquals([[user: "user1", token: "valid-user1"]], received[0])
+            testComplete()
+        }
+        50.times { service.isAuthenticated("user1", "valid-user1", handler) }
+    }
+}
+
+def testBatchesDifferentTokens() {
+    withLoginStub(200) {
+        RemoteLoginService service = createService(100)
+        Map<String, Boolean> answers = [:]
+        Closure check = {
+            if (answers.size() < 3)
+                return
+            assertEquals([user1: true, user2: false, user3: true], answers)
+            assertEquals(1, received.size())
+            assertEquals(3, received[0].size())
+            testComplete()
+        }
+        ["user1": "valid-user1", "user2": "expired", "user3": "valid-user3"].each { String user, String token ->
+            service.isAuthenticated(user, token, { AsyncResult<Boolean> result ->
+                answers[user] = result.result()
+                check()
+            } as Handler<AsyncResult<Boolean>>)
+        }
+    }
+}
+
+def testSendsFullBatchesRightAway() {
+    withLoginStub(200) {
+        RemoteLoginService service = createService(2)
+        List<AsyncResult<Boolean>> results = []
+        Handler<AsyncResult<Boolean>> handler = collect(results, 5) {
+            assertTrue(results.every { it.succeeded() && it.result() })
+            assertEquals([2, 2, 1], received*.size().sort().reverse())
+            testComplete()
+        }
+        (1..5).each { service.isAuthenticated("user${it}", "valid-user${it}", handler) }
+    }
+}
+
+def testFailsWhenTheLoginServiceFails() {
+    withLoginStub(500) {
+        RemoteLoginService service = createService(100)
+        List<AsyncResult<Boolean>> results = []
+        Handler<AsyncResult<Boolean>> handler = collect(results, 3) {
+            assertTrue(results.every { it.failed() && it.cause() instanceof ServiceUnavailableException })
+            testComplete()
+        }
+        service.isAuthenticated("user1", "valid-user1", handler)
+        service.isAuthenticated("user1", "valid-user1", handler)
+        service.isAuthenticated("user2", "valid-user2", handler)
+    }
+}
+
+def testFailsWhenTheAnswerStalls() {
+    // sends the headers of the answer, but never its body
+    HttpServer server = vertx.createHttpServer()
+    server.requestHandler { HttpServerRequest request ->
+        request.response.chunked = true
+        request.response.write("{")
+    }
+    server.listen(loginPort, "localhost") { result ->
+        RemoteLoginService service = createService(100)
+        service.isAuthenticated("user1", "valid-user1", { AsyncResult<Boolean> first ->
+            assertTrue(first.cause() instanceof ServiceUnavailableException)
+            // the failed validation isn't waited for by the next request of the user
+            service.isAuthenticated("user1", "valid-user1", { AsyncResult<Boolean> second ->
+                assertTrue(second.cause() instanceof ServiceUnavailableException)
+                testComplete()
+            } as Handler<AsyncResult<Boolean>>)
+        } as Handler<AsyncResult<Boolean>>)
+    }
+}
+
+def testReadsTheBodyOfAuthenticatedRequests() {
+    withLoginStub(200) {
+        SessionService sessionService = new SessionService(vertx, container.logger, new InMemorySessionRepository())
+        RouteMatcher routeMatcher = new RouteMatcher()
+        new SessionsController(createService(100), sessionService).registerUrls(routeMatcher)
+        vertx.createHttpServer().requestHandler(routeMatcher.asClosure()).listen(8092, "localhost") { result ->
+            assertTrue(result.succeeded)
+            // the body arrives while the token is being validated
+            vertx.createHttpClient(port: 8092, host: "localhost").post("/api/v1/sessions") { HttpClientResponse response ->
+                assertEquals(201, response.statusCode)
+                response.bodyHandler { Buffer body ->
+                    assertEquals("testGame", new JsonSlurper().parseText(body.toString()).game)
+                    testComplete()
+                }
+            }.putHeader(GameRegistryConstants.GAMEREGISTRY_USER_HEADER, "user1")
+             .putHeader(GameRegistryConstants.GAMEREGISTRY_TOKEN_HEADER, "valid-user1")
+             .end(JsonOutput.toJson([game: "testGame"]))
+        }
+    }
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
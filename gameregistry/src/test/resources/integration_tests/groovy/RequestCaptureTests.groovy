@@ -0,0 +1,68 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.metrics.CapturedRequest
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.metrics.RequestCapture
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testRecordFormat() {
+    UUID sessionId = UUID.randomUUID()
+    CapturedRequest request = new CapturedRequest(1234L, "POST", "/api/v1/sessions", "/api/v1/sessions", "user1")
+    request.sessionId = sessionId
+    request.body = '{"game":"game1"}'.getBytes("UTF-8")
+    request.bodySize = request.body.length
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+    DataOutputStream output = new DataOutputStream(bytes)
+    CapturedRequest.writeHeader(output)
+    request.write(output)
+    new CapturedRequest(1240L, "GET", "/api/v1/sessions", "/api/v1/sessions?game=game1", null).write(output)
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+    CapturedRequest.readHeader(input)
+    CapturedRequest read = CapturedRequest.read(input)
+    assertEquals(1234L, read.timestamp)
+    assertEquals("POST", read.method)
+    assertEquals("user1", read.user)
+    assertEquals(sessionId, read.sessionId)
+    assertEquals('{"game":"game1"}', new String(read.body, "UTF-8"))
+
+    read = CapturedRequest.read(input)
+    assertEquals("/api/v1/sessions?game=game1", read.uri)
+    assertNull(read.user)
+    assertNull(read.sessionId)
+    assertEquals(0, read.body.length)
+    assertNull(CapturedRequest.read(input))
+    testComplete()
+}
+
+def testCaptureStopsAtMaxSize() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    File file = File.createTempFile("capture", ".bin")
+    // room for the header and two records
+    RequestCapture capture = new RequestCapture(vertx, container.logger, metrics, file.path, 150)
+    capture.start()
+
+    3.times { capture.record(new CapturedRequest(it, "GET", "/api/v1/sessions", "/api/v1/sessions", "user1")) }
+    assertEquals(2L, metrics.counter("requests_captured").sum())
+    assertEquals(1L, metrics.counter("requests_capture_dropped").sum())
+
+    vertx.setTimer(200, {
+        capture.stop()
+        vertx.setTimer(100, {
+            DataInputStream input = new DataInputStream(new FileInputStream(capture.path))
+            CapturedRequest.readHeader(input)
+            assertEquals(0L, CapturedRequest.read(input).timestamp)
+            assertEquals(1L, CapturedRequest.read(input).timestamp)
+            assertNull(CapturedRequest.read(input))
+            input.close()
+            new File(capture.path).delete()
+            testComplete()
+        })
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)
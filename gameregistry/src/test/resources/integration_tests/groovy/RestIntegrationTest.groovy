@@ -3,6 +3,7 @@ package integration_tests.groovy
 import org.vertx.groovy.core.buffer.Buffer
 import org.vertx.groovy.core.eventbus.Message
 import org.vertx.groovy.core.http.HttpClient
+import org.vertx.groovy.core.http.HttpClientRequest
 import org.vertx.groovy.core.http.HttpClientResponse
 import org.vertx.groovy.testtools.VertxTests
 import org.vertx.java.core.json.JsonObject
@@ -120,6 +121,31 @@ def testFindSessions() {
     })
 }
 
+def testFindSessionsFields() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    createSession(client, { int statusCode, JsonObject data ->
+        assertEquals(201, statusCode)
+
+        findSessions(client, "testuser&fields=game,start", { int statusCode2, JsonObject data2 ->
+            assertEquals(200, statusCode2)
+            JsonObject session = data2.getArray("sessions").get(0)
+            // the id is always returned
+            assertEquals(["game", "id", "start"] as Set, session.fieldNames)
+            assertEquals(data.getString("id"), session.getString("id"))
+            testComplete()
+        })
+    })
+}
+
+def testFindSessionsUnknownField() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    findSessions(client, "testuser&fields=game,password", { int statusCode, JsonObject data ->
+        assertEquals(400, statusCode)
+        assertTrue(data.getString("error").startsWith("Unknown session fields requested."))
+        testComplete()
+    })
+}
+
 def testNotAuthenticated() {
     HttpClient client = vertx.createHttpClient().setPort(8080)
     client.post("/api/v1/sessions", { HttpClientResponse resp ->
@@ -153,6 +179,72 @@ def testInvalidJson() {
     }).putHeader("gameregistry-user", "testuser").putHeader("gameregistry-token", "testtoken").end("""{"test-game"}""")
 }
 
+def testNullBody() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    client.post("/api/v1/sessions", { HttpClientResponse resp ->
+        resp.bodyHandler { Buffer content ->
+            assertEquals(400, resp.statusCode)
+            assertEquals("""{"error":"The supplied request body is not valid JSON."}""", content.toString())
+            testComplete()
+        }
+    }).putHeader("gameregistry-user", "testuser").putHeader("gameregistry-token", "testtoken").end("null")
+}
+
+def testBodyTooLarge() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    String result = "x" * (64 * 1024)
+    client.post("/api/v1/sessions", { HttpClientResponse resp ->
+        resp.bodyHandler { Buffer content ->
+            assertEquals(413, resp.statusCode)
+            testComplete()
+        }
+    }).putHeader("gameregistry-user", "testuser").putHeader("gameregistry-token", "testtoken").end("""{"game":"${result}"}""")
+}
+
+def testChunkedBodyTooLarge() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    HttpClientRequest request = client.post("/api/v1/sessions", { HttpClientResponse resp ->
+        resp.bodyHandler { Buffer content ->
+            assertEquals(413, resp.statusCode)
+            testComplete()
+        }
+    }).putHeader("gameregistry-user", "testuser").putHeader("gameregistry-token", "testtoken")
+    // without a Content-Length, the limit is only noticed while the body is read
+    request.chunked = true
+    request.write('{"game":"')
+    5.times { request.write("x" * (16 * 1024)) }
+    request.end('"}')
+}
+
+def testMetrics() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    retrieveSession(client, "18aef6a4-d415-4a19-8261-fe6c18d8bac0", { int statusCode, JsonObject data ->
+        // metrics are served without authentication
+        client.getNow("/metrics", { HttpClientResponse resp ->
+            resp.bodyHandler { Buffer content ->
+                assertEquals(200, resp.statusCode)
+                assertTrue(resp.headers.get("Content-Type").startsWith("text/plain"))
+                String metrics = content.toString()
+                assertTrue(metrics.contains('gameregistry_http_requests_total{method="GET",route="/api/v1/sessions/:id",status="404"}'))
+                assertTrue(metrics.contains('gameregistry_http_request_duration_seconds_count{method="GET",route="/api/v1/sessions/:id"}'))
+                testComplete()
+            }
+        })
+    })
+}
+
+def testReady() {
+    HttpClient client = vertx.createHttpClient().setPort(8080)
+    // the module is deployed only after the warm-up finished
+    client.getNow("/ready", { HttpClientResponse resp ->
+        resp.bodyHandler { Buffer content ->
+            assertEquals(200, resp.statusCode)
+            assertEquals(true, new JsonObject(content.toString()).getBoolean("ready"))
+            testComplete()
+        }
+    })
+}
+
 def clearDatabase(Closure callback) {
     vertx.eventBus.send("gameregistry.db", [action: "drop_collection",
                                             collection: "game_session"]) { Message message ->
@@ -0,0 +1,70 @@
+package integration_tests.groovy
+
+import com.darylteo.vertx.promises.groovy.Promise
+import es.us.dad.gameregistry.server.exception.ObjectNotFoundException
+import es.us.dad.gameregistry.server.metrics.MetricsRegistry
+import es.us.dad.gameregistry.server.repository.ISessionRepository
+import es.us.dad.gameregistry.server.repository.MongoSessionRepository
+import es.us.dad.gameregistry.server.service.SessionExpiryWheel
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+Promise<Void> waitFor(long millis) {
+    Promise<Void> p = new Promise<Void>()
+    vertx.setTimer(millis, {
+        p.fulfill(null)
+    })
+    return p
+}
+
+def testExpiresOpenSessions() {
+    MetricsRegistry metrics = new MetricsRegistry()
+    ISessionRepository sessionRepository = new MongoSessionRepository(vertx, container.logger)
+    // sessions live 1 second, the wheel ticks every 100 milliseconds
+    SessionExpiryWheel expiryWheel = new SessionExpiryWheel(vertx, container.logger, sessionRepository, null,
+                                                            metrics, 1, 100, 8, 100)
+    SessionService sessionService = new SessionService(vertx, container.logger, sessionRepository,
+                                                       null, null, expiryWheel)
+    UUID openId = null
+    UUID finishedId = null
+
+    expiryWheel.start().then({
+        return sessionService.startSession("testUser", "testGame")
+    }).then({ GameSession gameSession ->
+        openId = gameSession.id
+        return sessionService.startSession("testUser", "testGame")
+    }).then({ GameSession gameSession ->
+        finishedId = gameSession.id
+        return sessionService.finishSession("testUser", finishedId, null)
+    }).then({
+        assertEquals(1, expiryWheel.size())
+        return waitFor(1500)
+    }).then({
+        assertEquals(0, expiryWheel.size())
+        assertEquals(1L, metrics.counter("sessions_expired").sum())
+        // the finished session is kept
+        return sessionService.getSession(finishedId)
+    }).then({ GameSession gameSession ->
+        assertNotNull(gameSession.end)
+        return sessionService.getSession(openId)
+    }).then({
+        assertTrue("should not be reached", false)
+    }).fail({ Exception ex ->
+        assertEquals(ObjectNotFoundException.class, ex.getClass())
+        expiryWheel.stop()
+        testComplete()
+    })
+}
+
+VertxTests.initialize(this)
+container.deployModule(System.getProperty("vertx.modulename"), TestUtils.readTestConfig(), { asyncResult ->
+    assertTrue(asyncResult.succeeded)
+    assertNotNull("deploymentID should not be null", asyncResult.result())
+
+    TestUtils.clearDatabase(vertx, {
+        VertxTests.startTests(this)
+    })
+})
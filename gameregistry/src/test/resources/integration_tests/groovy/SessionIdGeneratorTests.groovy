@@ -0,0 +1,46 @@
+package integration_tests.groovy
+
+import es.us.dad.gameregistry.server.repository.InMemorySessionRepository
+import es.us.dad.gameregistry.server.service.SessionService
+import es.us.dad.gameregistry.server.service.TimeOrderedSessionIdGenerator
+import es.us.dad.gameregistry.shared.domain.GameSession
+import org.vertx.groovy.testtools.VertxTests
+
+import static org.vertx.testtools.VertxAssert.*
+
+def testTimeOrderedIds() {
+    TimeOrderedSessionIdGenerator generator = new TimeOrderedSessionIdGenerator()
+    long before = System.currentTimeMillis()
+    List<UUID> ids = (1..10000).collect { generator.next() }
+    long after = System.currentTimeMillis()
+
+    // more ids than the counter holds within a millisecond, still increasing and unique
+    assertEquals(ids, ids.sort(false))
+    assertEquals(ids.size(), ids.toSet().size())
+    ids.each { UUID id ->
+        assertEquals(7, id.version())
+        assertEquals(2, id.variant())
+        assertEquals(id, UUID.fromString(id.toString()))
+    }
+    assertTrue(TimeOrderedSessionIdGenerator.millisOf(ids.first()) >= before)
+    // the last ids may have borrowed a few milliseconds from the future
+    assertTrue(TimeOrderedSessionIdGenerator.millisOf(ids.last()) <= after + 10000 / 2048 + 1)
+    testComplete()
+}
+
+def testStartsSessionsWithTheGenerator() {
+    SessionService service = new SessionService(vertx, container.logger, new InMemorySessionRepository(),
+                                                null, null, null, new TimeOrderedSessionIdGenerator())
+    service.startSession("user1", "game1").then({ GameSession first ->
+        service.startSession("user1", "game1").then({ GameSession second ->
+            assertEquals(7, first.id.version())
+            assertTrue(first.id < second.id)
+            testComplete()
+        })
+    }).fail({ Exception ex ->
+        fail(ex.message)
+    })
+}
+
+VertxTests.initialize(this)
+VertxTests.startTests(this)